@@ -3,6 +3,8 @@ package org.nuxeo.labs.nifi;
 import org.apache.nifi.controller.ControllerService;
 import org.nuxeo.client.NuxeoClient;
 
+import okhttp3.OkHttpClient;
+
 /**
  * {@link NuxeoClient} Service Factory.
  * 
@@ -24,4 +26,19 @@ public interface NuxeoClientService extends ControllerService {
      */
     String getDefaultRepository();
 
+    /**
+     * Retrieve the configured Nuxeo server URL, without trailing slash
+     *
+     * @return the Nuxeo server URL
+     */
+    String getServerUrl();
+
+    /**
+     * Retrieve the shared HTTP client, authenticated like the {@link NuxeoClient}, for raw requests the client does
+     * not cover (byte ranges, conditional requests, etc).
+     *
+     * @return the shared {@link OkHttpClient}
+     */
+    OkHttpClient getHttpClient();
+
 }
@@ -51,4 +51,19 @@ public class ITCreateNuxeoDocumentTest extends BaseTest {
         testRunner.assertTransferCount(CreateNuxeoDocument.REL_SUCCESS, 1);
     }
 
+    @Test
+    public void testEnsurePath() {
+        testRunner.setProperty(CreateNuxeoDocument.ENSURE_PATH, "true");
+        for (int i = 0; i < 3; i++) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("nx-path", "/ws/2026/10/" + (17 + i % 2));
+            attributes.put("nx-name", "put_doc_" + i);
+            testRunner.enqueue("", attributes);
+        }
+
+        testRunner.run(3);
+        testRunner.assertTransferCount(CreateNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(CreateNuxeoDocument.REL_SUCCESS, 3);
+    }
+
 }
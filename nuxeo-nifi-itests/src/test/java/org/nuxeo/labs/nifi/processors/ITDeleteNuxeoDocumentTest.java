@@ -19,6 +19,7 @@ package org.nuxeo.labs.nifi.processors;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.junit.Before;
@@ -53,4 +54,38 @@ public class ITDeleteNuxeoDocumentTest extends BaseTest {
                 doc -> doc.assertAttributeEquals("nx-trashed", "true"));
     }
 
+    @Test
+    public void testDirectDelete() {
+        testRunner.setProperty(DeleteNuxeoDocument.TRASH_DOCUMENT, "false");
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-path", "/folder_1/note_2");
+
+        testRunner.enqueue("", attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(DeleteNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(DeleteNuxeoDocument.REL_SUCCESS, 1);
+    }
+
+    @Test
+    public void testBulkTrash() throws InterruptedException {
+        testRunner.setProperty(DeleteNuxeoDocument.BULK_MODE, "true");
+        testRunner.setProperty(DeleteNuxeoDocument.QUERY,
+                "SELECT * FROM Note WHERE ecm:path STARTSWITH '/folder_1'");
+
+        testRunner.enqueue("");
+        for (int i = 0; i < 30 && testRunner.getFlowFilesForRelationship(DeleteNuxeoDocument.REL_SUCCESS)
+                                            .isEmpty(); i++) {
+            testRunner.run(1);
+            Thread.sleep(500);
+        }
+        testRunner.assertTransferCount(DeleteNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(DeleteNuxeoDocument.REL_SUCCESS, 1);
+
+        MockFlowFile ff = testRunner.getFlowFilesForRelationship(DeleteNuxeoDocument.REL_SUCCESS).get(0);
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_STATE, "COMPLETED");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_PROCESSED, "3");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_ERRORS, "0");
+    }
+
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ITExecuteNuxeoBulkActionTest extends BaseTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() throws Exception {
+        initDocuments();
+
+        testRunner = TestRunners.newTestRunner(ExecuteNuxeoBulkAction.class);
+        addController(testRunner);
+
+        testRunner.setProperty(ExecuteNuxeoBulkAction.NUXEO_CLIENT_SERVICE, "localhost");
+        testRunner.setProperty(ExecuteNuxeoBulkAction.ACTION, "setProperties");
+        testRunner.setProperty(ExecuteNuxeoBulkAction.QUERY,
+                "SELECT * FROM Note WHERE ecm:path STARTSWITH '/folder_1'");
+        testRunner.setProperty("dc:description", "bulk updated");
+    }
+
+    @Test
+    public void testProcessor() throws InterruptedException {
+        testRunner.enqueue("");
+        for (int i = 0; i < 30 && testRunner.getFlowFilesForRelationship(ExecuteNuxeoBulkAction.REL_SUCCESS)
+                                            .isEmpty(); i++) {
+            testRunner.run(1);
+            Thread.sleep(500);
+        }
+        testRunner.assertTransferCount(ExecuteNuxeoBulkAction.REL_FAILURE, 0);
+        testRunner.assertTransferCount(ExecuteNuxeoBulkAction.REL_SUCCESS, 1);
+
+        MockFlowFile ff = testRunner.getFlowFilesForRelationship(ExecuteNuxeoBulkAction.REL_SUCCESS).get(0);
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_STATE, "COMPLETED");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_PROCESSED, "3");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_BULK_ERRORS, "0");
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.client.objects.Document;
+
+public class ITImportNuxeoTreeTest extends BaseTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() throws Exception {
+        testRunner = TestRunners.newTestRunner(ImportNuxeoTree.class);
+        addController(testRunner);
+
+        testRunner.setProperty(ImportNuxeoTree.DOC_PATH, "${nx-path}");
+        testRunner.setProperty(CreateNuxeoDocument.DOC_NAME, "${nx-name}");
+        testRunner.setProperty(ImportNuxeoTree.DOC_TYPE, "${nx-type}");
+        testRunner.setProperty(ImportNuxeoTree.NUXEO_CLIENT_SERVICE, "localhost");
+    }
+
+    @Test
+    public void testProcessor() {
+        // Children before parents
+        enqueue("/tree/a/b", "file_1", "File");
+        enqueue("/tree/a", "b", "Folder");
+        enqueue("/tree/c", "file_2", "File");
+        enqueue("/tree/a/b", "file_3", "File");
+
+        testRunner.run(1);
+        testRunner.assertTransferCount(ImportNuxeoTree.REL_FAILURE, 0);
+        testRunner.assertTransferCount(ImportNuxeoTree.REL_SUCCESS, 4);
+
+        Document folder = nuxeoClient.repository().fetchDocumentByPath("/tree/a/b");
+        Assert.assertEquals(2, nuxeoClient.repository().fetchChildrenById(folder.getId()).getDocuments().size());
+    }
+
+    private void enqueue(String path, String name, String type) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-path", path);
+        attributes.put("nx-name", name);
+        attributes.put("nx-type", type);
+        testRunner.enqueue("", attributes);
+    }
+
+}
@@ -59,4 +59,18 @@ public class ITNuxeoDocumentOperationTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testInputBatch() throws Exception {
+        testRunner.setProperty(NuxeoDocumentOperation.INPUT_BATCH_SIZE, "10");
+
+        for (int i = 0; i < 3; i++) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("nx-path", "/folder_1/note_" + i);
+            testRunner.enqueue("", attributes);
+        }
+        testRunner.run(1);
+        testRunner.assertTransferCount(NuxeoDocumentOperation.REL_ORIGINAL, 3);
+        testRunner.assertTransferCount(NuxeoDocumentOperation.REL_FAILURE, 0);
+    }
+
 }
@@ -20,11 +20,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.jxpath.JXPathContext;
+import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.nuxeo.client.objects.Document;
 
 public class ITNuxeoDocumentToAttributesTest extends BaseTest {
 
@@ -81,4 +83,65 @@ public class ITNuxeoDocumentToAttributesTest extends BaseTest {
                 doc -> doc.assertAttributeExists("fileData"));
     }
 
+    @Test
+    public void testStreamingExtraction() {
+        testRunner.setProperty(NuxeoDocumentToAttributes.STREAMING, "true");
+        testRunner.setProperty("title", "dc:title");
+        testRunner.setProperty("fileData", "file:content/data");
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(NuxeoAttributes.VAR_ENTITY_TYPE, "document");
+
+        Document doc = nuxeoClient.repository().fetchDocumentByPath(FOLDER_2_FILE);
+        testRunner.enqueue(nuxeoClient.getConverterFactory().writeJSON(doc), attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_FAILURE, 0);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_SUCCESS, 1);
+
+        MockFlowFile ff = testRunner.getFlowFilesForRelationship(NuxeoDocumentToAttributes.REL_SUCCESS).get(0);
+        ff.assertAttributeEquals("title", "File");
+        ff.assertAttributeExists("fileData");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_DOC_ID, doc.getId());
+    }
+
+    @Test
+    public void testFlattenedProperties() {
+        testRunner.setProperty(NuxeoDocumentToAttributes.FLATTEN, "true");
+        testRunner.setProperty(NuxeoDocumentToAttributes.INCLUDE_PROPERTIES, "dc:title, file:content");
+        testRunner.setProperty(NuxeoDocumentToAttributes.EXCLUDE_PROPERTIES, "file:content.digest");
+        testRunner.setProperty(NuxeoDocumentToAttributes.MAX_ATTRIBUTE_SIZE, "2 B");
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-path", FOLDER_2_FILE);
+
+        testRunner.enqueue("", attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_FAILURE, 0);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_SUCCESS, 1);
+
+        MockFlowFile ff = testRunner.getFlowFilesForRelationship(NuxeoDocumentToAttributes.REL_SUCCESS).get(0);
+        ff.assertAttributeEquals("dc:title", "Fi");
+        ff.assertAttributeEquals("file:content.name", "bl");
+        ff.assertAttributeNotExists("file:content");
+        ff.assertAttributeNotExists("file:content.digest");
+        ff.assertAttributeNotExists("dc:creator");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_ENTITY_TYPE, "document");
+    }
+
+    @Test
+    public void testStreamingWithoutMapping() {
+        testRunner.setProperty(NuxeoDocumentToAttributes.STREAMING, "true");
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put(NuxeoAttributes.VAR_ENTITY_TYPE, "document");
+
+        Document doc = nuxeoClient.repository().fetchDocumentByPath(FOLDER_2_FILE);
+        testRunner.enqueue(nuxeoClient.getConverterFactory().writeJSON(doc), attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_FAILURE, 0);
+        testRunner.assertTransferCount(NuxeoDocumentToAttributes.REL_SUCCESS, 1);
+
+        // Nothing to extract, all the properties are set
+        MockFlowFile ff = testRunner.getFlowFilesForRelationship(NuxeoDocumentToAttributes.REL_SUCCESS).get(0);
+        ff.assertAttributeEquals("dc:title", "File");
+        ff.assertAttributeEquals(NuxeoAttributes.VAR_DOC_ID, doc.getId());
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ITPutNuxeoDocumentsTest extends BaseTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() throws Exception {
+        testRunner = TestRunners.newTestRunner(PutNuxeoDocuments.class);
+        addController(testRunner);
+
+        testRunner.setProperty(PutNuxeoDocuments.DOC_PATH, "${nx-path}");
+        testRunner.setProperty(CreateNuxeoDocument.DOC_NAME, "${nx-name}");
+        testRunner.setProperty(PutNuxeoDocuments.DOC_TYPE, "File");
+        testRunner.setProperty(PutNuxeoDocuments.BATCH_SIZE, "10");
+        testRunner.setProperty(PutNuxeoDocuments.NUXEO_CLIENT_SERVICE, "localhost");
+    }
+
+    @Test
+    public void testProcessor() {
+        for (int i = 0; i < 5; i++) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("nx-path", "/");
+            attributes.put("nx-name", "bulk_doc_" + i);
+            testRunner.enqueue("", attributes);
+        }
+
+        testRunner.run(1);
+        testRunner.assertTransferCount(PutNuxeoDocuments.REL_FAILURE, 0);
+        testRunner.assertTransferCount(PutNuxeoDocuments.REL_SUCCESS, 5);
+        for (MockFlowFile ff : testRunner.getFlowFilesForRelationship(PutNuxeoDocuments.REL_SUCCESS)) {
+            Assert.assertNotNull(ff.getAttribute(NuxeoAttributes.VAR_DOC_ID));
+        }
+    }
+
+    @Test
+    public void testFallback() {
+        testRunner.setProperty(PutNuxeoDocuments.BULK_OPERATION, "javascript.Missing");
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-path", "/");
+        attributes.put("nx-name", "single_doc");
+        testRunner.enqueue("", attributes);
+        attributes.put("nx-path", "/missing");
+        testRunner.enqueue("", attributes);
+
+        testRunner.run(1);
+        testRunner.assertTransferCount(PutNuxeoDocuments.REL_SUCCESS, 1);
+        testRunner.assertTransferCount(PutNuxeoDocuments.REL_FAILURE, 1);
+    }
+
+}
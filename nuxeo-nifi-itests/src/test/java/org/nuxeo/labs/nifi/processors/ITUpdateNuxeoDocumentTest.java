@@ -59,4 +59,43 @@ public class ITUpdateNuxeoDocumentTest extends BaseTest {
         Assert.assertEquals("dc:nature should be 'memo'", "memo", nature);
     }
 
+    @Test
+    public void testDeltaUpdate() {
+        Repository repository = createClient().schemas("*").repository();
+        String docId = repository.fetchDocumentByPath(FOLDER_2_FILE).getId();
+        testRunner.setProperty(UpdateNuxeoDocument.DELTA_UPDATE, "true");
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-docid", docId);
+
+        testRunner.enqueue("", attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(UpdateNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(UpdateNuxeoDocument.REL_SUCCESS, 1);
+
+        Document doc = repository.fetchDocumentById(docId);
+        Assert.assertEquals("dc:nature should be 'memo'", "memo", doc.getPropertyValue("dc:nature"));
+        Assert.assertEquals("dc:title should be unchanged", "File", doc.getPropertyValue("dc:title"));
+    }
+
+    @Test
+    public void testSkipUnchanged() {
+        Repository repository = createClient().schemas("*").repository();
+        Document doc = repository.fetchDocumentByPath(FOLDER_2_FILE);
+        doc.setPropertyValue("dc:nature", "memo");
+        doc = doc.updateDocument();
+        String json = nuxeoClient.getConverterFactory().writeJSON(doc);
+        testRunner.setProperty(UpdateNuxeoDocument.SKIP_UNCHANGED, "true");
+
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-entity", "document");
+
+        testRunner.enqueue(json, attributes);
+        testRunner.run(1);
+        testRunner.assertTransferCount(UpdateNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(UpdateNuxeoDocument.REL_SUCCESS, 0);
+        testRunner.assertTransferCount(UpdateNuxeoDocument.REL_UNCHANGED, 1);
+        Assert.assertEquals(1, testRunner.getCounterValue("Unchanged documents").longValue());
+    }
+
 }
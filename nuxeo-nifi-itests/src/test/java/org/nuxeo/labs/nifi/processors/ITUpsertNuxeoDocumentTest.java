@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ITUpsertNuxeoDocumentTest extends BaseTest {
+
+    private TestRunner testRunner;
+
+    @Before
+    public void init() throws Exception {
+        initDocuments();
+
+        testRunner = TestRunners.newTestRunner(UpsertNuxeoDocument.class);
+        addController(testRunner);
+
+        testRunner.setProperty(UpsertNuxeoDocument.DOC_PATH, "${nx-path}");
+        testRunner.setProperty(CreateNuxeoDocument.DOC_NAME, "${nx-name}");
+        testRunner.setProperty(UpsertNuxeoDocument.DOC_TYPE, "File");
+        testRunner.setProperty(UpsertNuxeoDocument.NUXEO_CLIENT_SERVICE, "localhost");
+        testRunner.setProperty("dc:nature", "memo");
+    }
+
+    @Test
+    public void testProcessor() {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("nx-path", "/folder_2");
+        attributes.put("nx-name", "file");
+        testRunner.enqueue("", attributes);
+        attributes.put("nx-name", "upsert_doc");
+        testRunner.enqueue("", attributes);
+
+        testRunner.run(2);
+        testRunner.assertTransferCount(UpsertNuxeoDocument.REL_FAILURE, 0);
+        testRunner.assertTransferCount(UpsertNuxeoDocument.REL_SUCCESS, 2);
+
+        MockFlowFile updated = testRunner.getFlowFilesForRelationship(UpsertNuxeoDocument.REL_SUCCESS).get(0);
+        updated.assertAttributeEquals(NuxeoAttributes.VAR_UPSERT_ACTION, "updated");
+        MockFlowFile created = testRunner.getFlowFilesForRelationship(UpsertNuxeoDocument.REL_SUCCESS).get(1);
+        created.assertAttributeEquals(NuxeoAttributes.VAR_UPSERT_ACTION, "created");
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.nuxeo.client.util;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Submit and follow Nuxeo Bulk Action Framework commands through the REST API.
+ * <p>
+ * Both calls return the <code>bulkStatus</code> entity: <code>commandId</code>, <code>state</code>,
+ * <code>processed</code>, <code>errorCount</code>, <code>total</code>, etc.
+ */
+public class BulkCommands {
+
+    public static final String STATE_COMPLETED = "COMPLETED";
+
+    public static final String STATE_ABORTED = "ABORTED";
+
+    public static final String STATE_UNKNOWN = "UNKNOWN";
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final OkHttpClient client;
+
+    private final ObjectMapper mapper;
+
+    public BulkCommands(OkHttpClient client, ObjectMapper mapper) {
+        super();
+        this.client = client;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Run an action on the documents selected by a query.
+     *
+     * @param apiUrl the REST API base URL, repository scoped
+     * @param action the bulk action identifier
+     * @param query the NXQL selection
+     * @param params the action parameters
+     * @return the command status
+     * @throws IOException if the command is rejected
+     */
+    public JsonNode submit(String apiUrl, String action, String query, Map<String, Object> params)
+            throws IOException {
+        HttpUrl url = HttpUrl.get(apiUrl)
+                             .newBuilder()
+                             .addPathSegments("search/bulk")
+                             .addPathSegment(action)
+                             .addQueryParameter("query", query)
+                             .build();
+        RequestBody body = RequestBody.create(JSON, this.mapper.writeValueAsBytes(params));
+        return call(new Request.Builder().url(url).post(body).build());
+    }
+
+    /**
+     * @param apiUrl the REST API base URL
+     * @param commandId the command identifier
+     * @return the command status
+     * @throws IOException if the status can't be retrieved
+     */
+    public JsonNode status(String apiUrl, String commandId) throws IOException {
+        HttpUrl url = HttpUrl.get(apiUrl).newBuilder().addPathSegment("bulk").addPathSegment(commandId).build();
+        return call(new Request.Builder().url(url).get().build());
+    }
+
+    public static String getState(JsonNode status) {
+        return status.path("state").asText(STATE_UNKNOWN);
+    }
+
+    public static boolean isDone(JsonNode status) {
+        String state = getState(status);
+        return STATE_COMPLETED.equals(state) || STATE_ABORTED.equals(state) || STATE_UNKNOWN.equals(state);
+    }
+
+    protected JsonNode call(Request request) throws IOException {
+        try (Response resp = this.client.newCall(request).execute()) {
+            if (!resp.isSuccessful()) {
+                throw new IOException("Unexpected response " + resp.code() + " for " + request.url());
+            }
+            return this.mapper.readTree(resp.body().byteStream());
+        }
+    }
+
+}
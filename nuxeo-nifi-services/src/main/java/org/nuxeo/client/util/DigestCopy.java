@@ -0,0 +1,63 @@
+package org.nuxeo.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Copy a stream while computing its digest, so the content is only read once.
+ */
+public class DigestCopy {
+
+    public static final String DEFAULT_ALGORITHM = "MD5";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private DigestCopy() {
+        super();
+    }
+
+    /**
+     * Copy the input to the output, updating the digest with every byte read.
+     *
+     * @param in the input stream
+     * @param out the output stream
+     * @param md the digest to update
+     * @return the hex encoded digest of the copied content
+     * @throws IOException if the copy fails
+     */
+    public static String copy(InputStream in, OutputStream out, MessageDigest md) throws IOException {
+        byte[] buffer = BUFFER.get();
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            md.update(buffer, 0, n);
+            out.write(buffer, 0, n);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * @param algorithm the digest algorithm name
+     * @return a new digest, null if the algorithm is null or unsupported
+     */
+    public static MessageDigest getInstance(String algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        return String.format("%0" + (digest.length * 2) + "x", new BigInteger(1, digest));
+    }
+
+}
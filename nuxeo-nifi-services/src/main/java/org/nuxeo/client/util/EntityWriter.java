@@ -0,0 +1,75 @@
+package org.nuxeo.client.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+
+import org.nuxeo.client.marshaller.NuxeoConverterFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serialize client entities straight to an output stream, with the configuration of the client converter.
+ * <p>
+ * {@link NuxeoConverterFactory#writeJSON(Object)} builds the whole JSON as a String, which then has to be encoded
+ * again to be written. The writer reuses the mapper of the converter instead, so the marshallers registered by the
+ * client still apply, and generates the UTF-8 bytes directly into the stream. When the mapper isn't reachable, it
+ * falls back to the String conversion.
+ * <p>
+ * Writers are immutable and can be shared across threads. The stream is left open.
+ */
+public final class EntityWriter {
+
+    /**
+     * Create a writer for the converter of a client.
+     */
+    public static EntityWriter of(NuxeoConverterFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("missing factory");
+        }
+        ObjectMapper mapper = null;
+        try {
+            Field field = NuxeoConverterFactory.class.getDeclaredField("objectMapper");
+            field.setAccessible(true);
+            mapper = (ObjectMapper) field.get(factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not exposed by this client version
+        }
+        ObjectWriter writer = mapper == null ? null : mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return new EntityWriter(factory, writer);
+    }
+
+    private final NuxeoConverterFactory factory;
+
+    private final ObjectWriter writer;
+
+    private EntityWriter(NuxeoConverterFactory factory, ObjectWriter writer) {
+        super();
+        this.factory = factory;
+        this.writer = writer;
+    }
+
+    /**
+     * Whether the entities are streamed, rather than converted to a String first.
+     */
+    public boolean isStreaming() {
+        return this.writer != null;
+    }
+
+    /**
+     * Write the entity as JSON.
+     *
+     * @throws IOException if the entity can't be serialized or written
+     */
+    public void write(Object entity, OutputStream out) throws IOException {
+        if (this.writer != null) {
+            this.writer.writeValue(out, entity);
+        } else {
+            out.write(this.factory.writeJSON(entity).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.nuxeo.client.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache of folder path to folder identifier, creating missing folders at most once.
+ * <p>
+ * Concurrent requests for the same missing path wait for the single thread resolving it, parents are resolved
+ * first, so sibling subtrees are created concurrently.
+ */
+public class FolderCache {
+
+    /**
+     * Server side folder lookup and creation.
+     */
+    @FunctionalInterface
+    public interface FolderResolver {
+
+        /**
+         * Retrieve a folder, creating it if missing.
+         *
+         * @param parentId the parent folder identifier, null for the root
+         * @param path the folder path
+         * @param name the folder name, empty for the root
+         * @return the folder identifier
+         */
+        String getOrCreate(String parentId, String path, String name);
+
+    }
+
+    private final Map<String, String> resolved;
+
+    private final ConcurrentMap<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    public FolderCache(int maxSize) {
+        super();
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.resolved = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Resolve a folder, creating it and its missing ancestors.
+     *
+     * @param scope the cache partition, e.g. the repository name, may be null
+     * @param path the absolute folder path
+     * @param resolver the server side resolver
+     * @return the folder identifier
+     */
+    public String ensure(String scope, String path, FolderResolver resolver) {
+        String normalized = normalize(path);
+        String key = key(scope, normalized);
+        String id = this.resolved.get(key);
+        if (id != null) {
+            return id;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> other = this.pending.putIfAbsent(key, mine);
+        if (other != null) {
+            // Someone else is on it
+            try {
+                return other.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            id = this.resolved.get(key);
+            if (id == null) {
+                if ("/".equals(normalized)) {
+                    id = resolver.getOrCreate(null, normalized, "");
+                } else {
+                    int idx = normalized.lastIndexOf('/');
+                    String parentId = ensure(scope, idx == 0 ? "/" : normalized.substring(0, idx), resolver);
+                    id = resolver.getOrCreate(parentId, normalized, normalized.substring(idx + 1));
+                }
+                this.resolved.put(key, id);
+            }
+            mine.complete(id);
+            return id;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.pending.remove(key, mine);
+        }
+    }
+
+    /**
+     * Forget a folder, for instance after it was deleted on the server.
+     */
+    public void invalidate(String scope, String path) {
+        this.resolved.remove(key(scope, normalize(path)));
+    }
+
+    public int size() {
+        return this.resolved.size();
+    }
+
+    protected static String normalize(String path) {
+        String normalized = path == null ? "" : path.trim();
+        while (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized.startsWith("/") ? normalized : "/" + normalized;
+    }
+
+    private static String key(String scope, String path) {
+        return scope == null ? path : scope + ':' + path;
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.nuxeo.client.util;
+
+/**
+ * Cheap detection of JSON literals, to avoid parsing plain strings.
+ * <p>
+ * Only the shape of the value is checked: an object or array has matching first and last characters, a string is
+ * quoted, numbers follow the JSON grammar and the <code>true</code>, <code>false</code> and <code>null</code>
+ * keywords are matched exactly. Surrounding whitespace is ignored. A match still has to be parsed, it may be
+ * invalid, but a value that doesn't match never parses as JSON.
+ */
+public final class JsonSniffer {
+
+    private JsonSniffer() {
+        // static only
+    }
+
+    /**
+     * Whether the value may be a JSON literal.
+     */
+    public static boolean isMaybeJSON(String value) {
+        if (value == null) {
+            return false;
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+        char first = value.charAt(start);
+        char last = value.charAt(end - 1);
+        switch (first) {
+        case '{':
+            return last == '}';
+        case '[':
+            return last == ']';
+        case '"':
+            return end - start > 1 && last == '"';
+        case 't':
+            return value.startsWith("true", start) && end - start == 4;
+        case 'f':
+            return value.startsWith("false", start) && end - start == 5;
+        case 'n':
+            return value.startsWith("null", start) && end - start == 4;
+        default:
+            return isNumber(value, start, end);
+        }
+    }
+
+    /**
+     * Match <code>-?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?</code>.
+     */
+    private static boolean isNumber(String value, int start, int end) {
+        int i = start;
+        if (value.charAt(i) == '-') {
+            i++;
+        }
+        if (i == end || !isDigit(value.charAt(i))) {
+            return false;
+        }
+        if (value.charAt(i) == '0') {
+            // No leading zeros
+            i++;
+        } else {
+            i = digits(value, i, end);
+        }
+        if (i < end && value.charAt(i) == '.') {
+            int frac = digits(value, i + 1, end);
+            if (frac == i + 1) {
+                return false;
+            }
+            i = frac;
+        }
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < end && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+                i++;
+            }
+            int exp = digits(value, i, end);
+            if (exp == i) {
+                return false;
+            }
+            i = exp;
+        }
+        return i == end;
+    }
+
+    private static int digits(String value, int start, int end) {
+        int i = start;
+        while (i < end && isDigit(value.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.nuxeo.client.util;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Process wide JSON configuration, shared by all the processors.
+ * <p>
+ * The mapper is configured once: unknown properties are ignored, and Java time values are written as ISO-8601
+ * strings. Sharing it keeps the serializer and deserializer caches warm across threads and scheduling cycles.
+ * <p>
+ * Readers and writers are immutable and thread safe, prefer them over the mapper. The mapper itself must not be
+ * reconfigured: use {@link ObjectMapper#copy()} for a different configuration.
+ */
+public final class NuxeoJson {
+
+    private static final ObjectMapper MAPPER = createMapper();
+
+    private static final ObjectReader TREE_READER = MAPPER.readerFor(JsonNode.class);
+
+    private static final ObjectWriter WRITER = MAPPER.writer();
+
+    private NuxeoJson() {
+        // static only
+    }
+
+    private static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        return mapper;
+    }
+
+    /**
+     * The shared mapper, not to be reconfigured.
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    /**
+     * Reader of JSON trees.
+     */
+    public static ObjectReader treeReader() {
+        return TREE_READER;
+    }
+
+    /**
+     * Reader of the given type.
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        return MAPPER.readerFor(type);
+    }
+
+    /**
+     * Writer of any value.
+     */
+    public static ObjectWriter writer() {
+        return WRITER;
+    }
+
+}
@@ -0,0 +1,239 @@
+package org.nuxeo.client.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.JXPathException;
+import org.apache.commons.jxpath.Pointer;
+import org.nuxeo.client.objects.Document;
+
+/**
+ * A {@link DocumentPath} expression, parsed once into an immutable list of steps.
+ * <p>
+ * Plain key and index steps are navigated directly over maps, lists and arrays; JXPath is only involved for bean
+ * properties and predicates. Indexes keep the JXPath convention: 1 is the first element, negative values count from
+ * the length.
+ * <p>
+ * Expressions hold no document state: they are thread safe and can be evaluated against any number of documents.
+ * Use {@link #of(String)} to share them through a bounded cache.
+ */
+public final class PathExpression {
+
+    private static final Pattern SCHEMA_PROPERTY = Pattern.compile("[a-zA-Z_:][\\w\\-:]*:[a-zA-Z_:][\\w\\-:]*");
+
+    private static final Pattern PLAIN_KEY = Pattern.compile("[a-zA-Z_][\\w\\-]*");
+
+    private static final int CACHE_SIZE = 1024;
+
+    private static final Map<String, PathExpression> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, PathExpression>(64, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PathExpression> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    /**
+     * Retrieve the compiled expression from the cache, compiling it if needed.
+     */
+    public static PathExpression of(String xpath) {
+        if (xpath == null) {
+            throw new NullPointerException("missing xpath");
+        }
+        PathExpression expr = CACHE.get(xpath);
+        if (expr == null) {
+            expr = compile(xpath);
+            CACHE.put(xpath, expr);
+        }
+        return expr;
+    }
+
+    /**
+     * Parse the expression, bypassing the cache.
+     */
+    public static PathExpression compile(String xpath) {
+        if (xpath == null) {
+            throw new NullPointerException("missing xpath");
+        }
+        if ("".equals(xpath.trim())) {
+            return new PathExpression(xpath, null);
+        }
+        List<Step> steps = new ArrayList<>();
+        for (String part : xpath.split("/")) {
+            steps.add(new Step(part));
+        }
+        return new PathExpression(xpath, steps.toArray(new Step[steps.size()]));
+    }
+
+    private final String xpath;
+
+    private final Step[] steps;
+
+    private PathExpression(String xpath, Step[] steps) {
+        super();
+        this.xpath = xpath;
+        this.steps = steps;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T evaluate(Document doc) {
+        if (doc == null) {
+            throw new NullPointerException("missing doc");
+        }
+        if (this.steps == null) {
+            return null;
+        }
+        Object ref = doc;
+        for (int i = 0; ref != null && i < this.steps.length; i++) {
+            ref = this.steps[i].apply(doc, ref);
+        }
+        return (T) ref;
+    }
+
+    /**
+     * The parsed steps, null for a blank expression.
+     */
+    Step[] steps() {
+        return this.steps;
+    }
+
+    @Override
+    public String toString() {
+        return this.xpath;
+    }
+
+    static final class Step {
+
+        final String part;
+
+        final boolean schema;
+
+        /** Array index, null if the step isn't numeric */
+        final Integer index;
+
+        /** Map key, null if the step isn't a plain name */
+        final String key;
+
+        /** Expression against a bean or map, null if not valid */
+        final CompiledExpression expr;
+
+        /** Expression against an array or list, null if not valid */
+        final CompiledExpression rootExpr;
+
+        Step(String part) {
+            this.part = part;
+            this.schema = SCHEMA_PROPERTY.matcher(part).matches();
+            this.index = this.schema ? null : parseIndex(part);
+            this.key = !this.schema && PLAIN_KEY.matcher(part).matches() ? part : null;
+            this.expr = this.schema ? null : compileQuietly(part);
+            this.rootExpr = this.schema || this.index != null ? null : compileQuietly("$root" + part);
+        }
+
+        /**
+         * Resolve the step from the value of the previous one.
+         */
+        Object apply(Document doc, Object ref) {
+            if (this.schema) {
+                if (ref != doc && ref != doc.getProperties()) {
+                    throw new IllegalArgumentException("Path references schema in non-referencable context.");
+                }
+                return doc.getPropertyValue(this.part);
+            }
+            return resolve(ref);
+        }
+
+        Object resolve(Object ref) {
+            // Direct navigation
+            if (this.index != null) {
+                if (ref instanceof Object[]) {
+                    Object[] array = (Object[]) ref;
+                    int pos = position(array.length);
+                    return pos < 0 ? null : array[pos];
+                } else if (ref instanceof List) {
+                    List<?> list = (List<?>) ref;
+                    int pos = position(list.size());
+                    return pos < 0 ? null : list.get(pos);
+                }
+            } else if (this.key != null && ref instanceof Map) {
+                return ((Map<?, ?>) ref).get(this.key);
+            }
+
+            // Handle array pathing and filtering
+            CompiledExpression compiled = this.expr;
+            String source = this.part;
+            if (ref instanceof Object[] || ref instanceof List) {
+                source = "$root" + this.part;
+                compiled = this.rootExpr;
+            }
+            if (compiled == null) {
+                // Raise the parsing error
+                compiled = JXPathContext.compile(source);
+            }
+
+            // Lazily create list by iterating through pointers
+            JXPathContext jx = JXPathContext.newContext(ref);
+            jx.getVariables().declareVariable("root", ref);
+
+            @SuppressWarnings("unchecked")
+            Iterator<Pointer> ptr = compiled.iteratePointers(jx);
+            List<Object> list = null;
+            Object val = null;
+            while (ptr.hasNext()) {
+                Pointer p = ptr.next();
+                if (val != null && list == null) {
+                    list = new LinkedList<>();
+                    list.add(val);
+                }
+                val = p.getValue();
+                if (list != null) {
+                    list.add(val);
+                }
+            }
+            if (list != null) {
+                return list;
+            }
+            return val;
+        }
+
+        /**
+         * Zero based position of the index, -1 for the JXPath empty selection at 0.
+         */
+        private int position(int len) {
+            int idx = this.index;
+            if (idx < 0) {
+                idx = len + idx;
+            }
+            if (idx < 0 || idx > len) {
+                throw new IllegalArgumentException("Array index out of range");
+            }
+            return idx - 1;
+        }
+
+        private static Integer parseIndex(String part) {
+            try {
+                return Integer.valueOf(part);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        private static CompiledExpression compileQuietly(String source) {
+            try {
+                return JXPathContext.compile(source);
+            } catch (JXPathException e) {
+                return null;
+            }
+        }
+    }
+
+}
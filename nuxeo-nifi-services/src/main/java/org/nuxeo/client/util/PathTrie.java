@@ -0,0 +1,288 @@
+package org.nuxeo.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.nuxeo.client.objects.Document;
+import org.nuxeo.client.util.PathExpression.Step;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A list of {@link PathExpression}s merged into a prefix trie, so that the steps shared by several expressions are
+ * resolved once per document, and all the values come out of a single traversal.
+ * <p>
+ * A leading <code>properties</code> step is dropped before a schema property, both forms resolve the same value.
+ * Tries are immutable once built and can be shared across threads.
+ * <p>
+ * When all the expressions start with a schema property followed by plain key and index steps, the values can also
+ * be {@link #extract(InputStream, ObjectMapper) extracted} from the document JSON while it is parsed: only the
+ * matched values are materialized, and parsing stops once they are all found.
+ */
+public final class PathTrie {
+
+    /**
+     * Values extracted from a document JSON.
+     */
+    public static final class Extraction {
+
+        private final String documentId;
+
+        private final Object[] values;
+
+        Extraction(String documentId, Object[] values) {
+            this.documentId = documentId;
+            this.values = values;
+        }
+
+        /**
+         * The document <code>uid</code>, null if not found.
+         */
+        public String getDocumentId() {
+            return this.documentId;
+        }
+
+        /**
+         * The values, in the order of the expressions.
+         */
+        public Object[] getValues() {
+            return this.values;
+        }
+    }
+
+    static final class Node {
+
+        final Step step;
+
+        /** Indexes of the expressions ending on this node */
+        int[] targets = new int[0];
+
+        Node[] children = new Node[0];
+
+        private Map<String, Node> index = new LinkedHashMap<>();
+
+        Node(Step step) {
+            this.step = step;
+        }
+
+        Node child(Step step) {
+            return this.index.computeIfAbsent(step.part, k -> new Node(step));
+        }
+
+        void addTarget(int target) {
+            int[] copy = new int[this.targets.length + 1];
+            System.arraycopy(this.targets, 0, copy, 0, this.targets.length);
+            copy[this.targets.length] = target;
+            this.targets = copy;
+        }
+
+        void freeze() {
+            this.children = this.index.values().toArray(new Node[this.index.size()]);
+            for (Node child : this.children) {
+                child.freeze();
+            }
+        }
+
+        boolean isStreamable() {
+            for (Node child : this.children) {
+                if (child.step.schema || (child.step.key == null && child.step.index == null)
+                        || !child.isStreamable()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether the value has to be materialized to resolve the node, rather than streamed through.
+         */
+        boolean isMaterialized(JsonToken token) {
+            if (this.targets.length > 0) {
+                return true;
+            }
+            for (Node child : this.children) {
+                if (token == JsonToken.START_OBJECT ? child.step.key == null
+                        : token != JsonToken.START_ARRAY || child.step.index == null || child.step.index < 1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Node root = new Node(null);
+
+    private final int size;
+
+    private final boolean streamable;
+
+    public PathTrie(List<PathExpression> exprs) {
+        super();
+        this.size = exprs.size();
+        for (int i = 0; i < this.size; i++) {
+            Step[] steps = exprs.get(i).steps();
+            if (steps == null) {
+                // Blank expression, never resolved
+                continue;
+            }
+            int start = steps.length > 1 && "properties".equals(steps[0].part) && steps[1].schema ? 1 : 0;
+            Node node = this.root;
+            for (int s = start; s < steps.length; s++) {
+                node = node.child(steps[s]);
+            }
+            node.addTarget(i);
+        }
+        this.root.freeze();
+        boolean schemas = true;
+        for (Node child : this.root.children) {
+            schemas &= child.step.schema && child.isStreamable();
+        }
+        this.streamable = schemas;
+    }
+
+    /**
+     * Number of expressions in the trie.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Whether the values can be extracted from the document JSON.
+     */
+    public boolean isStreamable() {
+        return this.streamable;
+    }
+
+    /**
+     * Resolve all the expressions against the document.
+     *
+     * @return the values, in the order of the expressions
+     */
+    public Object[] evaluate(Document doc) {
+        if (doc == null) {
+            throw new NullPointerException("missing doc");
+        }
+        Object[] values = new Object[this.size];
+        for (Node child : this.root.children) {
+            evaluate(doc, doc, child, values);
+        }
+        return values;
+    }
+
+    private static void evaluate(Document doc, Object ref, Node node, Object[] values) {
+        Object val = node.step.apply(doc, ref);
+        if (val == null) {
+            return;
+        }
+        for (int target : node.targets) {
+            values[target] = val;
+        }
+        for (Node child : node.children) {
+            evaluate(doc, val, child, values);
+        }
+    }
+
+    /**
+     * Resolve all the expressions against a document JSON, without building the document.
+     *
+     * @param in the document JSON
+     * @param mapper the mapper materializing the matched values
+     * @return the values and the document ID
+     * @throws IOException if the JSON can't be parsed
+     * @throws IllegalStateException if the trie isn't {@link #isStreamable() streamable}
+     */
+    public Extraction extract(InputStream in, ObjectMapper mapper) throws IOException {
+        if (!this.streamable) {
+            throw new IllegalStateException("Paths can't be extracted from JSON");
+        }
+        Object[] values = new Object[this.size];
+        String documentId = null;
+        int pending = this.root.children.length;
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a JSON object");
+            }
+            while ((documentId == null || pending > 0) && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("uid".equals(name)) {
+                    documentId = parser.getValueAsString();
+                } else if ("properties".equals(name) && token == JsonToken.START_OBJECT) {
+                    // Once all found, leave the object only if the uid is still to be read
+                    while ((pending > 0 || documentId == null) && parser.nextToken() == JsonToken.FIELD_NAME) {
+                        Node node = pending > 0 ? this.root.index.get(parser.getCurrentName()) : null;
+                        parser.nextToken();
+                        if (node == null) {
+                            parser.skipChildren();
+                        } else {
+                            extract(parser, mapper, node, values);
+                            pending--;
+                        }
+                    }
+                    // Remaining properties are absent
+                    pending = 0;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Extraction(documentId, values);
+    }
+
+    private static void extract(JsonParser parser, ObjectMapper mapper, Node node, Object[] values)
+            throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (node.isMaterialized(token)) {
+            resolve(node, mapper.readValue(parser, Object.class), values);
+        } else if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Node child = node.index.get(parser.getCurrentName());
+                parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    extract(parser, mapper, child, values);
+                }
+            }
+        } else {
+            int position = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                position++;
+                Node child = null;
+                for (Node candidate : node.children) {
+                    if (candidate.step.index == position) {
+                        child = candidate;
+                        break;
+                    }
+                }
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    extract(parser, mapper, child, values);
+                }
+            }
+        }
+    }
+
+    private static void resolve(Node node, Object val, Object[] values) {
+        if (val == null) {
+            return;
+        }
+        for (int target : node.targets) {
+            values[target] = val;
+        }
+        for (Node child : node.children) {
+            resolve(child, child.step.resolve(val), values);
+        }
+    }
+
+}
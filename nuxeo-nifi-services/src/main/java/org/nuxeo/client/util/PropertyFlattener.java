@@ -0,0 +1,192 @@
+package org.nuxeo.client.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Project document properties to flat string attributes.
+ * <p>
+ * When flattening, complex values are expanded to one entry per leaf, keyed by their dotted path:
+ * <code>file:content.name</code>, <code>dc:subjects.0</code>. Otherwise each property is kept whole, as its string
+ * representation. Keys are filtered with include and exclude globs, a pattern matching a key also applies to the
+ * entries below it. Values are truncated to a byte size, and entries are dropped once the total byte budget of the
+ * keys and values is exhausted.
+ * <p>
+ * Instances are immutable and can be shared across threads.
+ */
+public class PropertyFlattener {
+
+    private final boolean flatten;
+
+    private final List<Pattern> includes;
+
+    private final List<Pattern> excludes;
+
+    private final int maxValueBytes;
+
+    private final long maxTotalBytes;
+
+    /**
+     * @param flatten whether complex values are expanded
+     * @param includes the globs of the keys to keep, all if empty
+     * @param excludes the globs of the keys to drop
+     * @param maxValueBytes the maximum size of a value, in UTF-8 bytes
+     * @param maxTotalBytes the maximum size of all the keys and values, in UTF-8 bytes
+     */
+    public PropertyFlattener(boolean flatten, List<String> includes, List<String> excludes, int maxValueBytes,
+            long maxTotalBytes) {
+        super();
+        if (maxValueBytes < 0 || maxTotalBytes < 0) {
+            throw new IllegalArgumentException("Sizes must not be negative");
+        }
+        this.flatten = flatten;
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        this.maxValueBytes = maxValueBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * Project the properties.
+     *
+     * @return the attributes, in the order of the properties
+     */
+    public Map<String, String> flatten(Map<String, Object> properties) {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        if (properties == null) {
+            return attrs;
+        }
+        long[] budget = { this.maxTotalBytes };
+        for (Map.Entry<String, Object> prop : properties.entrySet()) {
+            if (!add(attrs, prop.getKey(), prop.getValue(), this.includes.isEmpty(), budget)) {
+                break;
+            }
+        }
+        return attrs;
+    }
+
+    /**
+     * @return false once the budget is exhausted
+     */
+    private boolean add(Map<String, String> attrs, String key, Object val, boolean included, long[] budget) {
+        if (val == null || matches(this.excludes, key)) {
+            return true;
+        }
+        included = included || matches(this.includes, key);
+        if (this.flatten && val instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) val).entrySet()) {
+                if (!add(attrs, key + "." + entry.getKey(), entry.getValue(), included, budget)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (this.flatten && (val instanceof List || val instanceof Object[])) {
+            List<?> list = val instanceof List ? (List<?>) val : Arrays.asList((Object[]) val);
+            for (int i = 0; i < list.size(); i++) {
+                if (!add(attrs, key + "." + i, list.get(i), included, budget)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (!included) {
+            return true;
+        }
+
+        String value = truncate(val.toString(), this.maxValueBytes);
+        long size = utf8Length(key) + utf8Length(value);
+        if (size > budget[0]) {
+            return false;
+        }
+        budget[0] -= size;
+        attrs.put(key, value);
+        return true;
+    }
+
+    /**
+     * Truncate the value to the byte size, on a character boundary.
+     */
+    public static String truncate(String value, int maxBytes) {
+        if ((long) value.length() * 3 <= maxBytes) {
+            return value;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return value;
+        }
+        int end = maxBytes;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            // Don't split a multi-byte sequence
+            end--;
+        }
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Convert a glob, with <code>*</code> and <code>?</code> wildcards, to a pattern.
+     */
+    public static Pattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static List<Pattern> compile(List<String> globs) {
+        if (globs == null || globs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Pattern> patterns = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            patterns.add(glob(glob));
+        }
+        return Collections.unmodifiableList(patterns);
+    }
+
+    private static boolean matches(List<Pattern> patterns, String key) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(key).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long utf8Length(String value) {
+        long len = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                len++;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.nuxeo.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Download a resource with concurrent HTTP Range requests, writing the segments in order.
+ * <p>
+ * At most <code>concurrency</code> segments are held in memory at once. Falls back to a single stream when the
+ * server ignores the Range header.
+ */
+public class RangedDownload {
+
+    private final OkHttpClient client;
+
+    private final ExecutorService executor;
+
+    private final int concurrency;
+
+    private final int segmentSize;
+
+    public RangedDownload(OkHttpClient client, ExecutorService executor, int concurrency, int segmentSize) {
+        super();
+        if (concurrency < 1 || segmentSize < 1) {
+            throw new IllegalArgumentException("Concurrency and segment size must be positive");
+        }
+        this.client = client;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Download the resource into the output stream.
+     *
+     * @param url the resource URL
+     * @param length the expected resource length
+     * @param out the output to write to, in order
+     * @return the number of bytes written
+     * @throws IOException if a segment can't be retrieved
+     */
+    public long download(String url, long length, OutputStream out) throws IOException {
+        long end = Math.min(length, this.segmentSize) - 1;
+        Request first = end < 0 ? new Request.Builder().url(url).build() : request(url, 0, end);
+        try (Response resp = this.client.newCall(first).execute()) {
+            ResponseBody body = resp.body();
+            if (resp.code() == 200) {
+                // Range ignored, stream it all
+                try (InputStream in = body.byteStream()) {
+                    return IOUtils.copyLarge(in, out);
+                }
+            } else if (resp.code() != 206) {
+                throw new IOException("Unexpected response " + resp.code() + " for " + url);
+            }
+            out.write(checkLength(body.bytes(), 0, end));
+        }
+
+        Deque<Future<byte[]>> window = new ArrayDeque<>(this.concurrency);
+        long next = end + 1;
+        try {
+            while (next < length || !window.isEmpty()) {
+                while (next < length && window.size() < this.concurrency) {
+                    long start = next;
+                    long last = Math.min(length, start + this.segmentSize) - 1;
+                    window.add(this.executor.submit(() -> segment(url, start, last)));
+                    next = last + 1;
+                }
+                out.write(window.poll().get());
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download interrupted: " + url, ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            window.forEach(f -> f.cancel(true));
+        }
+        return length;
+    }
+
+    protected byte[] segment(String url, long start, long end) throws IOException {
+        try (Response resp = this.client.newCall(request(url, start, end)).execute()) {
+            if (resp.code() != 206) {
+                throw new IOException("Unexpected response " + resp.code() + " for range " + start + "-" + end);
+            }
+            return checkLength(resp.body().bytes(), start, end);
+        }
+    }
+
+    protected static byte[] checkLength(byte[] data, long start, long end) throws IOException {
+        if (data.length != end - start + 1) {
+            throw new IOException("Short range " + start + "-" + end + ": " + data.length + " bytes");
+        }
+        return data;
+    }
+
+    protected Request request(String url, long start, long end) {
+        return new Request.Builder().url(url).header("Range", "bytes=" + start + "-" + end).build();
+    }
+
+}
@@ -16,18 +16,56 @@
  */
 package org.nuxeo.labs.nifi.processors;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
 import org.apache.nifi.components.Validator;
 import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
+import org.nuxeo.client.util.NuxeoJson;
+
+import com.fasterxml.jackson.databind.JsonNode;
 
 public abstract class AbstractNuxeoDynamicProcessor extends AbstractNuxeoProcessor {
 
-    protected List<PropertyDescriptor> dynamicProperties;
+    /** Parse the value when it looks like JSON */
+    public static final String TYPE_AUTO = "auto";
+
+    /** Keep the value as is */
+    public static final String TYPE_STRING = "string";
+
+    /** Always parse the value, kept as is if invalid */
+    public static final String TYPE_JSON = "json";
+
+    public static final PropertyDescriptor PROPERTY_TYPES = new PropertyDescriptor.Builder().name("PROPERTY_TYPES")
+                                                                                            .displayName(
+                                                                                                    "Property Types")
+                                                                                            .description(
+                                                                                                    "Comma separated list of name=type, to set how the values of the dynamic properties are converted: 'string' keeps the value as is, 'json' parses it and 'auto' parses it when it looks like JSON. Unlisted properties are 'auto'.")
+                                                                                            .required(false)
+                                                                                            .addValidator(
+                                                                                                    AbstractNuxeoDynamicProcessor::validatePropertyTypes)
+                                                                                            .build();
+
+    /** Marks the dynamic values evaluated per flowfile */
+    private static final Object EVALUATED = new Object();
+
+    protected PropertyDescriptor[] dynamicProperties = new PropertyDescriptor[0];
+
+    /** Types of the dynamic properties, by index */
+    private String[] dynamicTypes = new String[0];
+
+    /** Converted values of the dynamic properties without expression language, by index */
+    private Object[] constantValues = new Object[0];
 
     public AbstractNuxeoDynamicProcessor() {
         super();
@@ -50,7 +88,115 @@ public abstract class AbstractNuxeoDynamicProcessor extends AbstractNuxeoProcess
 
     protected void processorScheduled(ProcessContext ctx) {
         super.processorScheduled(ctx);
-        this.dynamicProperties = getDynamicProperties(ctx);
+        PropertyDescriptor[] props = getDynamicProperties(ctx).toArray(new PropertyDescriptor[0]);
+
+        // Types are only set when the processor supports them
+        Map<String, String> types = this.descriptors.contains(PROPERTY_TYPES)
+                ? parsePropertyTypes(ctx.getProperty(PROPERTY_TYPES).getValue())
+                : Collections.emptyMap();
+
+        // Convert the constant values once
+        String[] dynamicTypes = new String[props.length];
+        Object[] constants = new Object[props.length];
+        for (int i = 0; i < props.length; i++) {
+            dynamicTypes[i] = types.getOrDefault(props[i].getName(), TYPE_AUTO);
+            constants[i] = isConstant(ctx, props[i])
+                    ? convertValue(dynamicTypes[i], getArg(ctx, null, null, props[i]))
+                    : EVALUATED;
+        }
+        this.dynamicTypes = dynamicTypes;
+        this.constantValues = constants;
+        this.dynamicProperties = props;
+    }
+
+    /**
+     * Evaluate a dynamic property and convert its value according to its type.
+     *
+     * @param index the index of the property in {@link #dynamicProperties}
+     * @return the string or JSON value, null if not set
+     */
+    protected Object getDynamicValue(ProcessContext ctx, FlowFile ff, int index) {
+        Object val = this.constantValues[index];
+        if (val == EVALUATED) {
+            return convertValue(this.dynamicTypes[index], getArg(ctx, ff, null, this.dynamicProperties[index]));
+        }
+        // Don't share mutable trees across flowfiles
+        return val instanceof JsonNode && ((JsonNode) val).isContainerNode() ? ((JsonNode) val).deepCopy() : val;
+    }
+
+    /**
+     * Evaluate all the dynamic properties.
+     *
+     * @return the values by property name, in order, null values skipped
+     */
+    protected Map<String, Object> getDynamicValues(ProcessContext ctx, FlowFile ff) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < this.dynamicProperties.length; i++) {
+            Object value = getDynamicValue(ctx, ff, i);
+            if (value != null) {
+                values.put(this.dynamicProperties[i].getName(), value);
+            }
+        }
+        return values;
+    }
+
+    protected Object convertValue(String type, String value) {
+        if (value == null) {
+            return null;
+        }
+        if (TYPE_STRING.equals(type)) {
+            return value;
+        }
+        JsonNode json;
+        if (TYPE_JSON.equals(type)) {
+            try {
+                json = NuxeoJson.treeReader().readTree(value);
+            } catch (IOException e) {
+                json = null;
+            }
+        } else {
+            json = isMaybeJSON(value);
+        }
+        return json != null && !json.isMissingNode() ? json : value;
+    }
+
+    /**
+     * Parse a list of name=type.
+     *
+     * @throws IllegalArgumentException if an entry is invalid
+     */
+    protected static Map<String, String> parsePropertyTypes(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> types = new HashMap<>();
+        for (String entry : value.split(",")) {
+            int idx = entry.lastIndexOf('=');
+            String name = idx < 0 ? "" : entry.substring(0, idx).trim();
+            String type = idx < 0 ? "" : entry.substring(idx + 1).trim();
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Expecting name=type: " + entry.trim());
+            }
+            if (!TYPE_AUTO.equals(type) && !TYPE_STRING.equals(type) && !TYPE_JSON.equals(type)) {
+                throw new IllegalArgumentException("Unknown type for " + name + ": " + type);
+            }
+            types.put(name, type);
+        }
+        return types;
+    }
+
+    private static ValidationResult validatePropertyTypes(String subject, String input, ValidationContext context) {
+        String error = null;
+        try {
+            parsePropertyTypes(input);
+        } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+        }
+        return new ValidationResult.Builder().subject(subject)
+                                             .input(input)
+                                             .valid(error == null)
+                                             .explanation(error)
+                                             .build();
     }
 
 }
\ No newline at end of file
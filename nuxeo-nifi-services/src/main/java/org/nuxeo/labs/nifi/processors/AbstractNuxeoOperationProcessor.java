@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.nifi.components.PropertyDescriptor;
@@ -34,6 +37,7 @@ import org.nuxeo.client.objects.PaginableEntity;
 import org.nuxeo.client.objects.RepositoryEntity;
 import org.nuxeo.client.objects.blob.Blob;
 import org.nuxeo.client.objects.blob.Blobs;
+import org.nuxeo.client.util.DigestCopy;
 
 public abstract class AbstractNuxeoOperationProcessor extends AbstractNuxeoDynamicProcessor {
 
@@ -72,13 +76,28 @@ public abstract class AbstractNuxeoOperationProcessor extends AbstractNuxeoDynam
     }
 
     protected Operation enrichOperation(ProcessContext ctx, FlowFile ff, Operation op) {
+        return enrichOperation(op, getOperationArgs(ctx, ff));
+    }
+
+    protected Operation enrichOperation(Operation op, Map<String, String> args) {
+        for (Map.Entry<String, String> arg : args.entrySet()) {
+            op.context(arg.getKey(), arg.getValue());
+        }
+        return op;
+    }
+
+    /**
+     * Evaluate the dynamic properties given to the operation for a flowfile.
+     */
+    protected Map<String, String> getOperationArgs(ProcessContext ctx, FlowFile ff) {
+        Map<String, String> args = new LinkedHashMap<>();
         for (PropertyDescriptor desc : this.dynamicProperties) {
             String arg = getArg(ctx, ff, null, desc);
             if (arg != null) {
-                op.context(desc.getName(), arg);
+                args.put(desc.getName(), arg);
             }
         }
-        return op;
+        return args;
     }
 
     protected void executeOperation(ProcessContext ctx, ProcessSession session, FlowFile ff, Operation op) {
@@ -121,9 +140,8 @@ public abstract class AbstractNuxeoOperationProcessor extends AbstractNuxeoDynam
         FlowFile childFlow = ff == null ? session.create() : session.create(ff);
 
         // Convert and write to JSON
-        String json = nxClient().getConverterFactory().writeJSON(doc);
-        try (OutputStream out = session.write(childFlow)) {
-            IOUtils.write(json, out, UTF8);
+        try {
+            writeJSON(session, childFlow, doc);
         } catch (IOException e) {
             getLogger().error("Error serializing entity" + doc, e);
             return;
@@ -141,13 +159,18 @@ public abstract class AbstractNuxeoOperationProcessor extends AbstractNuxeoDynam
     protected void sendBlob(ProcessContext ctx, ProcessSession session, FlowFile ff, Blob blob) {
         FlowFile childFlow = ff == null ? session.create() : session.create(ff);
 
-        // Copy blob to output
+        // Copy blob to output, hashing on the way
+        MessageDigest md = DigestCopy.getInstance(DigestCopy.DEFAULT_ALGORITHM);
+        String hash;
         try (InputStream in = blob.getStream(); OutputStream out = session.write(childFlow)) {
-            IOUtils.copy(in, out);
+            hash = DigestCopy.copy(in, out, md);
         } catch (IOException e) {
             getLogger().error("Error serializing blob" + blob, e);
+            session.putAttribute(childFlow, VAR_ERROR, String.valueOf(e));
+            session.transfer(childFlow, REL_FAILURE);
             return;
         }
+        session.putAttribute(childFlow, VAR_DIGEST, hash);
         session.transfer(childFlow, REL_SUCCESS);
     }
 
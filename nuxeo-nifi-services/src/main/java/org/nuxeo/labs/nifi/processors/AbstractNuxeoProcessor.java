@@ -1,8 +1,13 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
@@ -15,18 +20,25 @@ import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.AbstractProcessor;
 import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.NuxeoClient;
 import org.nuxeo.client.objects.Document;
+import org.nuxeo.client.objects.Operation;
 import org.nuxeo.client.objects.Repository;
+import org.nuxeo.client.objects.operation.DocRef;
+import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.spi.NuxeoClientRemoteException;
+import org.nuxeo.client.util.BulkCommands;
+import org.nuxeo.client.util.EntityWriter;
+import org.nuxeo.client.util.JsonSniffer;
+import org.nuxeo.client.util.NuxeoJson;
 import org.nuxeo.labs.nifi.NuxeoClientService;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public abstract class AbstractNuxeoProcessor extends AbstractProcessor implements NuxeoAttributes {
 
@@ -123,6 +135,42 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
                                                                                                  StandardValidators.BOOLEAN_VALIDATOR)
                                                                                          .build();
 
+    public static final PropertyDescriptor CHECK_CHANGE_TOKEN = new PropertyDescriptor.Builder().name(
+            "CHECK_CHANGE_TOKEN")
+                                                                                                .displayName(
+                                                                                                        "Check Change Token")
+                                                                                                .description(
+                                                                                                        "Only update if the document still has the change token of the nx-change-token attribute, or of the flowfile document.")
+                                                                                                .allowableValues(YES,
+                                                                                                        NO)
+                                                                                                .defaultValue("false")
+                                                                                                .required(true)
+                                                                                                .addValidator(
+                                                                                                        StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                                .build();
+
+    public static final PropertyDescriptor FOLDER_TYPE = new PropertyDescriptor.Builder().name("FOLDER_TYPE")
+                                                                                         .displayName("Folder Type")
+                                                                                         .description(
+                                                                                                 "Document type of the missing folders created along the path.")
+                                                                                         .defaultValue("Folder")
+                                                                                         .required(true)
+                                                                                         .addValidator(
+                                                                                                 StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                         .build();
+
+    public static final PropertyDescriptor FOLDER_CACHE_SIZE = new PropertyDescriptor.Builder().name(
+            "FOLDER_CACHE_SIZE")
+                                                                                               .displayName(
+                                                                                                       "Folder Cache Size")
+                                                                                               .description(
+                                                                                                       "Maximum number of known folder paths kept in memory.")
+                                                                                               .defaultValue("10000")
+                                                                                               .required(true)
+                                                                                               .addValidator(
+                                                                                                       StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                               .build();
+
     public static final Relationship REL_SUCCESS = new Relationship.Builder().name("success")
                                                                              .description("Document retrieved")
                                                                              .build();
@@ -135,15 +183,30 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
                                                                              .description("Document unavailable")
                                                                              .build();
 
+    public static final Relationship REL_CONFLICT = new Relationship.Builder().name("conflict")
+                                                                              .description(
+                                                                                      "Document modified since the change token")
+                                                                              .build();
+
     protected static final Charset UTF8 = Charset.forName("UTF-8");
 
+    /** Header selecting the repository of automation calls */
+    protected static final String HEADER_REPOSITORY = "X-NXRepository";
+
+    protected static final String DEFAULT_REPOSITORY = "default";
+
     protected NuxeoClientService nuxeoClientService;
 
     protected List<PropertyDescriptor> descriptors;
 
     protected Set<Relationship> relationships;
 
-    private ObjectMapper objectMapper;
+    private volatile EntityWriter entityWriter;
+
+    /** Resolution of the properties, built when scheduled */
+    private Map<PropertyDescriptor, PropertyPlan> plans = Collections.emptyMap();
+
+    private String[] schemas = { "*" };
 
     private ThreadLocal<NuxeoClient> clientHolder = null;
     
@@ -159,24 +222,73 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
      * @return
      */
     protected Repository getRepository(final ProcessContext context, final FlowFile ff) {
+        String repo = getRepositoryName(context, ff);
+
+        NuxeoClient client = nxClient().schemas(this.schemas);
+        if (repo == null) {
+            return client.repository();
+        } else {
+            return client.repository(repo);
+        }
+    }
+
+    /**
+     * Create an automation operation running in the target repository. Clients are reused across flowfiles, so the
+     * repository header is always set, to the server default repository name when no repository is configured.
+     *
+     * @param context
+     * @param ff
+     * @param operationId the operation identifier
+     * @return the operation
+     */
+    protected Operation getOperation(final ProcessContext context, final FlowFile ff, String operationId) {
+        String repo = getRepositoryName(context, ff);
+        return nxClient().header(HEADER_REPOSITORY, repo != null ? repo : DEFAULT_REPOSITORY).operation(operationId);
+    }
+
+    /**
+     * Resolve the target repository name, falling back to the client service default.
+     *
+     * @param context
+     * @param ff
+     * @return the repository name, null for the server default
+     */
+    protected String getRepositoryName(final ProcessContext context, final FlowFile ff) {
         String repo = this.nuxeoClientService.getDefaultRepository();
 
         PropertyValue pval = context.getProperty(TARGET_REPO);
         if (pval.isSet()) {
             repo = pval.evaluateAttributeExpressions(ff).getValue();
         }
+        return repo;
+    }
 
-        String schemas = "*";
-        if (this.descriptors.contains(FILTER_SCHEMAS)) {
-            schemas = context.getProperty(FILTER_SCHEMAS).getValue();
+    /**
+     * Build the REST API base URL, scoped to the target repository.
+     *
+     * @param context
+     * @param ff
+     * @return the API URL, without trailing slash
+     */
+    protected String getApiUrl(final ProcessContext context, final FlowFile ff) {
+        String repo = getRepositoryName(context, ff);
+        StringBuilder url = new StringBuilder(this.nuxeoClientService.getServerUrl()).append("/api/v1");
+        if (repo != null) {
+            url.append("/repo/").append(repo);
         }
+        return url.toString();
+    }
 
-        NuxeoClient client = nxClient().schemas(schemas);
-        if (repo == null) {
-            return client.repository();
-        } else {
-            return client.repository(repo);
-        }
+    /**
+     * Build a REST API URL for a document, scoped to the target repository.
+     *
+     * @param context
+     * @param ff
+     * @param docId the document identifier
+     * @return the document URL
+     */
+    protected String getDocumentUrl(final ProcessContext context, final FlowFile ff, String docId) {
+        return getApiUrl(context, ff) + "/id/" + docId;
     }
 
     @Override
@@ -203,6 +315,16 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
         this.nuxeoClientService = context.getProperty(NUXEO_CLIENT_SERVICE)
                                          .asControllerService(NuxeoClientService.class);
         this.clientHolder = ThreadLocal.withInitial(this.nuxeoClientService::buildClient);
+
+        // Resolve the constants once, only expressions are evaluated per flowfile
+        Map<PropertyDescriptor, PropertyPlan> plans = new HashMap<>();
+        for (PropertyDescriptor desc : context.getProperties().keySet()) {
+            plans.put(desc, PropertyPlan.of(context, desc));
+        }
+        this.plans = plans;
+        if (this.descriptors.contains(FILTER_SCHEMAS)) {
+            this.schemas = StringUtils.stripAll(StringUtils.split(context.getProperty(FILTER_SCHEMAS).getValue(), ','));
+        }
         processorScheduled(context);
     }
 
@@ -212,17 +334,16 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
 
         this.clientHolder = null;
         this.nuxeoClientService = null;
-        this.objectMapper = null;
+        this.entityWriter = null;
+        this.plans = Collections.emptyMap();
+        this.schemas = new String[] { "*" };
     }
 
     protected String getArg(ProcessContext ctx, FlowFile ff, String key, PropertyDescriptor desc) {
         if (desc != null) {
-            PropertyValue pdv = ctx.getProperty(desc);
-            if (pdv.isSet()) {
-                if (desc.isExpressionLanguageSupported()) {
-                    pdv = pdv.evaluateAttributeExpressions(ff);
-                }
-                return pdv.getValue();
+            PropertyPlan plan = getPlan(ctx, desc);
+            if (plan.isSet()) {
+                return plan.getValue(ff).getValue();
             }
         }
         if (key != null && ff != null) {
@@ -233,14 +354,26 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
 
     protected PropertyValue getValue(ProcessContext ctx, FlowFile ff, PropertyDescriptor desc) {
         if (desc != null) {
-            PropertyValue pdv = ctx.getProperty(desc);
-            if (pdv.isSet()) {
-                return desc.isExpressionLanguageSupported() ? pdv.evaluateAttributeExpressions(ff) : pdv;
+            PropertyPlan plan = getPlan(ctx, desc);
+            if (plan.isSet()) {
+                return plan.getValue(ff);
             }
         }
         return null;
     }
 
+    /**
+     * Whether the property is set without expression language, its value is the same for all the flowfiles.
+     */
+    protected boolean isConstant(ProcessContext ctx, PropertyDescriptor desc) {
+        return getPlan(ctx, desc).isConstant();
+    }
+
+    private PropertyPlan getPlan(ProcessContext ctx, PropertyDescriptor desc) {
+        PropertyPlan plan = this.plans.get(desc);
+        return plan != null ? plan : PropertyPlan.of(ctx, desc);
+    }
+
     protected Document getDocument(ProcessContext context, FlowFile flowFile) {
         String docId = getArg(context, flowFile, VAR_DOC_ID, DOC_ID);
         String path = getArg(context, flowFile, VAR_PATH, DOC_PATH);
@@ -254,25 +387,208 @@ public abstract class AbstractNuxeoProcessor extends AbstractProcessor implement
         return doc;
     }
 
+    /**
+     * Reference the target document without fetching it.
+     *
+     * @param context
+     * @param flowFile
+     * @return the reference by ID or path, null if neither is known
+     */
+    protected DocRef getDocRef(ProcessContext context, FlowFile flowFile) {
+        String docId = getArg(context, flowFile, VAR_DOC_ID, DOC_ID);
+        if (StringUtils.isNotBlank(docId)) {
+            return new DocRef(docId);
+        }
+        String path = getArg(context, flowFile, VAR_PATH, DOC_PATH);
+        return StringUtils.isBlank(path) ? null : new DocRef(path);
+    }
+
+    /**
+     * Create an empty document referencing the target, only the properties set on it are sent on update.
+     *
+     * @param context
+     * @param flowFile
+     * @param loaded the flowfile document, if already read
+     * @param changeToken the expected change token, null for an unconditional update
+     * @return the document reference
+     */
+    protected Document getReference(ProcessContext context, FlowFile flowFile, Document loaded, String changeToken) {
+        String docId = loaded != null ? loaded.getId() : getArg(context, flowFile, VAR_DOC_ID, DOC_ID);
+        if (StringUtils.isBlank(docId)) {
+            // Path only, resolve the identifier
+            Document doc = getDocument(context, flowFile);
+            if (doc == null) {
+                throw new NuxeoClientException("No document ID or path");
+            }
+            docId = doc.getId();
+        }
+        if (changeToken == null) {
+            return Document.createWithId(docId, null);
+        }
+        ObjectNode json = objectMapper().createObjectNode();
+        json.put("entity-type", "document");
+        json.put("uid", docId);
+        json.put("changeToken", changeToken);
+        return nxClient().getConverterFactory().readJSON(json.toString(), Document.class);
+    }
+
+    /**
+     * Retrieve a folder by path, creating it in its parent if missing. Used as the
+     * {@link org.nuxeo.client.util.FolderCache.FolderResolver} of the folder caches.
+     *
+     * @param repo the repository name, null for the default one
+     * @param parentId the parent identifier, null for the root
+     * @param path the folder path
+     * @param name the folder name
+     * @param folderType the type of the created folder
+     * @return the folder identifier
+     */
+    protected String getOrCreateFolder(String repo, String parentId, String path, String name, String folderType) {
+        NuxeoClient client = nxClient().schemas("dublincore");
+        Repository rep = repo == null ? client.repository() : client.repository(repo);
+        try {
+            return rep.fetchDocumentByPath(path).getId();
+        } catch (NuxeoClientRemoteException nce) {
+            if (nce.getStatus() != 404 || parentId == null) {
+                throw nce;
+            }
+        }
+        Document folder = Document.createWithName(name, folderType);
+        folder.setPropertyValue("dc:title", name);
+        return rep.createDocumentById(parentId, folder).getId();
+    }
+
+    /**
+     * @param nce the client error
+     * @return true if the server rejected a stale change token
+     */
+    protected boolean isConflict(NuxeoClientException nce) {
+        return nce instanceof NuxeoClientRemoteException && ((NuxeoClientRemoteException) nce).getStatus() == 409;
+    }
+
+    /**
+     * Set the entity type and document ID attributes at once.
+     */
+    protected FlowFile putDocumentAttributes(ProcessSession session, FlowFile ff, String entityType, String docId) {
+        Map<String, String> attrs = new HashMap<>(4);
+        attrs.put(VAR_ENTITY_TYPE, entityType);
+        attrs.put(VAR_DOC_ID, docId);
+        return session.putAllAttributes(ff, attrs);
+    }
+
+    /**
+     * Write the document as the flowfile content, tag the flowfile with its entity type and ID and route it to
+     * success. Routed to failure if the content can't be written.
+     */
+    protected void transferDocument(ProcessSession session, FlowFile flowFile, Document doc) {
+        try {
+            writeJSON(session, flowFile, doc);
+        } catch (IOException e) {
+            session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+
+        flowFile = putDocumentAttributes(session, flowFile, doc.getEntityType(), doc.getId());
+        session.transfer(flowFile, REL_SUCCESS);
+    }
+
+    /**
+     * Copy a bulk command status to the flowfile attributes.
+     */
+    protected FlowFile putBulkStatus(ProcessSession session, FlowFile ff, JsonNode status) {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        attrs.put(VAR_BULK_COMMAND, status.path("commandId").asText());
+        attrs.put(VAR_BULK_STATE, BulkCommands.getState(status));
+        attrs.put(VAR_BULK_PROCESSED, status.path("processed").asText("0"));
+        attrs.put(VAR_BULK_ERRORS, status.path("errorCount").asText("0"));
+        attrs.put(VAR_BULK_TOTAL, status.path("total").asText("0"));
+        return session.putAllAttributes(ff, attrs);
+    }
+
+    /**
+     * Poll the bulk command of the flowfile. Until the command is done, the flowfile is penalized and put back in
+     * the input queue, so no thread waits on the server. Once done, the final status is written as content and the
+     * flowfile is routed to success, or failure if the command was aborted.
+     */
+    protected void followBulkCommand(ProcessContext context, ProcessSession session, FlowFile flowFile,
+            BulkCommands bulkCommands) {
+        String commandId = flowFile.getAttribute(VAR_BULK_COMMAND);
+        JsonNode status;
+        try {
+            status = bulkCommands.status(getApiUrl(context, flowFile), commandId);
+        } catch (IOException e) {
+            getLogger().warn("Unable to retrieve bulk status: " + commandId, e);
+            session.transfer(session.penalize(flowFile));
+            return;
+        }
+        flowFile = putBulkStatus(session, flowFile, status);
+        if (!BulkCommands.isDone(status)) {
+            session.transfer(session.penalize(flowFile));
+            return;
+        }
+
+        // Final status as content
+        try (OutputStream out = session.write(flowFile)) {
+            NuxeoJson.writer().writeValue(out, status);
+        } catch (IOException e) {
+            getLogger().error("Unable to write bulk status: " + commandId, e);
+            session.putAttribute(flowFile, VAR_ERROR, String.valueOf(e));
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+        if (BulkCommands.STATE_COMPLETED.equals(BulkCommands.getState(status))) {
+            session.transfer(flowFile, REL_SUCCESS);
+        } else {
+            session.putAttribute(flowFile, VAR_ERROR, status.path("errorMessage").asText("Bulk command aborted"));
+            session.transfer(flowFile, REL_FAILURE);
+        }
+    }
+
+    /**
+     * Serialize a client entity as JSON into the flowfile content, without building the intermediate String. The
+     * writer is created from the first client and shared by all the threads.
+     *
+     * @throws IOException if the entity can't be serialized or written
+     */
+    protected void writeJSON(ProcessSession session, FlowFile ff, Object entity) throws IOException {
+        EntityWriter writer = this.entityWriter;
+        if (writer == null) {
+            // Clients of the same service share their configuration, a concurrent initialization is harmless
+            writer = EntityWriter.of(nxClient().getConverterFactory());
+            if (!writer.isStreaming()) {
+                getLogger().warn("The client JSON mapper isn't reachable, documents are converted to a String "
+                        + "before being written");
+            }
+            this.entityWriter = writer;
+        }
+        try (OutputStream out = session.write(ff)) {
+            writer.write(entity, out);
+        }
+    }
+
+    /**
+     * Parse the value if it looks like a JSON literal.
+     *
+     * @return the parsed value, null for a plain string
+     */
     protected JsonNode isMaybeJSON(String val) {
-        // Expensive but guaranteed to work with valid JSON
+        // Sniff first, plain strings don't go through the parser
+        if (!JsonSniffer.isMaybeJSON(val)) {
+            return null;
+        }
         try {
-            final ObjectMapper mapper = objectMapper();
-            return mapper.readTree(val);
+            return NuxeoJson.treeReader().readTree(val);
         } catch (IOException e) {
             return null;
         }
     }
 
+    /**
+     * The process wide mapper, see {@link NuxeoJson}. Must not be reconfigured.
+     */
     protected ObjectMapper objectMapper() {
-        if (this.objectMapper != null) {
-            return this.objectMapper;
-        }
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.objectMapper.registerModule(new JavaTimeModule());
-        this.objectMapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        return this.objectMapper;
+        return NuxeoJson.mapper();
     }
 
 }
@@ -50,12 +50,14 @@ import org.nuxeo.client.objects.EntityTypes;
 import org.nuxeo.client.spi.NuxeoClientException;
 
 @Tags({ "nuxeo", "put", "attach", "blob" })
-@CapabilityDescription("Attach a blob to a Nuxeo Document.")
+@CapabilityDescription("Attach a blob to a Nuxeo Document. With a change token, the update is conditional and stale "
+        + "documents are routed to 'conflict'.")
 @SeeAlso({ UploadNuxeoBlob.class })
 @ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_BATCH, description = "Upload batch identifier"),
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_INDEX, description = "Upload index"),
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_XPATH, description = "Property XPath"),
-        @ReadsAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type") })
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_CHANGE_TOKEN, description = "Expected document change token") })
 @WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID") })
 @InputRequirement(Requirement.INPUT_REQUIRED)
@@ -74,6 +76,8 @@ public class AttachNuxeoBlob extends AbstractNuxeoDynamicProcessor {
                                                                                            StandardValidators.NON_BLANK_VALIDATOR)
                                                                                    .build();
 
+    protected boolean checkChangeToken = false;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -82,14 +86,22 @@ public class AttachNuxeoBlob extends AbstractNuxeoDynamicProcessor {
         descriptors.add(DOC_ID);
         descriptors.add(DOC_PATH);
         descriptors.add(XPATH);
+        descriptors.add(CHECK_CHANGE_TOKEN);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
         relationships.add(REL_SUCCESS);
         relationships.add(REL_FAILURE);
+        relationships.add(REL_CONFLICT);
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.checkChangeToken = ctx.getProperty(CHECK_CHANGE_TOKEN).asBoolean();
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -113,6 +125,7 @@ public class AttachNuxeoBlob extends AbstractNuxeoDynamicProcessor {
 
             // Try to load from existing context
             String entityType = flowFile.getAttribute(VAR_ENTITY_TYPE);
+            String changeToken = this.checkChangeToken ? getArg(context, flowFile, VAR_CHANGE_TOKEN, null) : null;
             if (EntityTypes.DOCUMENT.equals(entityType)) {
                 try (InputStream in = session.read(flowFile)) {
                     String json = IOUtils.toString(in, UTF8);
@@ -123,8 +136,17 @@ public class AttachNuxeoBlob extends AbstractNuxeoDynamicProcessor {
                 }
             }
 
-            // Load from server
-            if (doc == null) {
+            if (this.checkChangeToken) {
+                // Conditional update, no need to fetch the document
+                if (changeToken == null && doc != null) {
+                    changeToken = doc.getChangeToken();
+                }
+                if (StringUtils.isBlank(changeToken)) {
+                    throw new NuxeoClientException("No change token");
+                }
+                doc = getReference(context, flowFile, doc, changeToken);
+            } else if (doc == null) {
+                // Load from server
                 doc = getDocument(context, flowFile);
             }
 
@@ -135,12 +157,17 @@ public class AttachNuxeoBlob extends AbstractNuxeoDynamicProcessor {
 
             // Attach the blob
             doc.setPropertyValue(xpath, props);
-            doc = doc.updateDocument();
+            doc = this.checkChangeToken ? getRepository(context, flowFile).updateDocument(doc) : doc.updateDocument();
 
-            session.putAttribute(flowFile, VAR_ENTITY_TYPE, doc.getEntityType());
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+            flowFile = putDocumentAttributes(session, flowFile, doc.getEntityType(), doc.getId());
             session.transfer(flowFile, REL_SUCCESS);
         } catch (NuxeoClientException nce) {
+            if (isConflict(nce)) {
+                getLogger().warn("Document changed since change token", nce);
+                session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
+                session.transfer(flowFile, REL_CONFLICT);
+                return;
+            }
             getLogger().error("Unable to attach document", nce);
             session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
             session.transfer(flowFile, REL_FAILURE);
@@ -17,15 +17,15 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -105,13 +105,14 @@ public class CancelNuxeoWorkflow extends AbstractNuxeoProcessor {
             for (Workflow wf : wfs) {
                 rep.cancelWorkflowInstance(wf.getId());
                 FlowFile childFlow = session.create(flowFile);
-                session.putAttribute(childFlow, VAR_ENTITY_TYPE, wf.getEntityType());
-                session.putAttribute(childFlow, "nx-workflow-id", wf.getId());
+                Map<String, String> attrs = new HashMap<>(4);
+                attrs.put(VAR_ENTITY_TYPE, wf.getEntityType());
+                attrs.put("nx-workflow-id", wf.getId());
+                childFlow = session.putAllAttributes(childFlow, attrs);
 
                 // Convert and write to JSON
-                String json = nxClient().getConverterFactory().writeJSON(wf);
-                try (OutputStream out = session.write(childFlow)) {
-                    IOUtils.write(json, out, UTF8);
+                try {
+                    writeJSON(session, childFlow, wf);
                 } catch (IOException e) {
                     session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
                     session.transfer(flowFile, REL_FAILURE);
@@ -16,8 +16,6 @@
  */
 package org.nuxeo.labs.nifi.processors;
 
-import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,7 +24,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -48,9 +45,12 @@ import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Document;
 import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.spi.NuxeoClientRemoteException;
+import org.nuxeo.client.util.FolderCache;
 
 @Tags({ "nuxeo", "create", "document" })
-@CapabilityDescription("Create a Nuxeo Document in the repository.")
+@CapabilityDescription("Create a Nuxeo Document in the repository. Missing parent folders can be created on the fly, "
+        + "known folders are cached.")
 @SeeAlso({ GetNuxeoDocument.class, UpdateNuxeoDocument.class })
 @ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_NAME, description = "Document name"),
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Document path"),
@@ -96,6 +96,22 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
                                                                                            StandardValidators.NON_BLANK_VALIDATOR)
                                                                                    .build();
 
+    public static final PropertyDescriptor ENSURE_PATH = new PropertyDescriptor.Builder().name("ENSURE_PATH")
+                                                                                         .displayName(
+                                                                                                 "Ensure Parent Path")
+                                                                                         .description(
+                                                                                                 "Create the missing folders of the document path.")
+                                                                                         .allowableValues(YES, NO)
+                                                                                         .defaultValue("false")
+                                                                                         .required(true)
+                                                                                         .addValidator(
+                                                                                                 StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                         .build();
+
+    protected FolderCache folderCache;
+
+    protected String folderType;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -107,6 +123,10 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
         descriptors.add(DOC_TITLE);
         descriptors.add(ATTACH_BLOB);
         descriptors.add(XPATH);
+        descriptors.add(ENSURE_PATH);
+        descriptors.add(FOLDER_TYPE);
+        descriptors.add(FOLDER_CACHE_SIZE);
+        descriptors.add(PROPERTY_TYPES);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -115,6 +135,21 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        if (ctx.getProperty(ENSURE_PATH).asBoolean()) {
+            this.folderType = ctx.getProperty(FOLDER_TYPE).getValue();
+            this.folderCache = new FolderCache(ctx.getProperty(FOLDER_CACHE_SIZE).asInteger());
+        }
+    }
+
+    @Override
+    protected void processorStopped(ProcessContext ctx) {
+        super.processorStopped(ctx);
+        this.folderCache = null;
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -136,19 +171,8 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
             doc.setPropertyValue("dc:title", title);
 
             // Set the new properties
-            if (this.dynamicProperties != null) {
-                for (PropertyDescriptor desc : this.dynamicProperties) {
-                    String key = desc.getName();
-                    String value = getArg(context, flowFile, null, desc);
-                    if (value != null) {
-                        Object json = isMaybeJSON(value);
-                        if (json != null) {
-                            doc.setPropertyValue(key, json);
-                        } else {
-                            doc.setPropertyValue(key, value);
-                        }
-                    }
-                }
+            for (Map.Entry<String, Object> prop : getDynamicValues(context, flowFile).entrySet()) {
+                doc.setPropertyValue(prop.getKey(), prop.getValue());
             }
 
             // Attach blob?
@@ -170,21 +194,13 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
             }
 
             // Create document
-            doc = getRepository(context, flowFile).createDocumentByPath(path, doc);
-
-            // Convert and write to JSON
-            String json = nxClient().getConverterFactory().writeJSON(doc);
-            try (OutputStream out = session.write(flowFile)) {
-                IOUtils.write(json, out, UTF8);
-            } catch (IOException e) {
-                session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
-                session.transfer(flowFile, REL_FAILURE);
-                return;
+            if (this.folderCache != null) {
+                doc = createInPath(context, flowFile, path, doc);
+            } else {
+                doc = getRepository(context, flowFile).createDocumentByPath(path, doc);
             }
 
-            session.putAttribute(flowFile, VAR_ENTITY_TYPE, doc.getEntityType());
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
-            session.transfer(flowFile, REL_SUCCESS);
+            transferDocument(session, flowFile, doc);
         } catch (NuxeoClientException nce) {
             getLogger().error("Unable to store document", nce);
             session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
@@ -192,4 +208,19 @@ public class CreateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
         }
     }
 
+    protected Document createInPath(ProcessContext context, FlowFile flowFile, String path, Document doc) {
+        String repo = getRepositoryName(context, flowFile);
+        String parentId = this.folderCache.ensure(repo, path,
+                (parent, folderPath, name) -> getOrCreateFolder(repo, parent, folderPath, name, this.folderType));
+        try {
+            return getRepository(context, flowFile).createDocumentById(parentId, doc);
+        } catch (NuxeoClientRemoteException nce) {
+            if (nce.getStatus() == 404) {
+                // Parent removed behind our back
+                this.folderCache.invalidate(repo, path);
+            }
+            throw nce;
+        }
+    }
+
 }
@@ -17,14 +17,18 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -35,6 +39,7 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
@@ -43,17 +48,31 @@ import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Document;
-import org.nuxeo.client.objects.Repository;
+import org.nuxeo.client.objects.operation.DocRef;
 import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.util.BulkCommands;
+
+import com.fasterxml.jackson.databind.JsonNode;
 
 @Tags({ "nuxeo", "delete", "document" })
-@CapabilityDescription("Remove a document from Nuxeo.")
-@SeeAlso({ GetNuxeoDocument.class, GetNuxeoBlob.class })
+@CapabilityDescription("Remove a document from Nuxeo. The document is trashed or deleted by reference, without "
+        + "being fetched first. In bulk mode, the documents selected by a NXQL query or a list of IDs are trashed or "
+        + "deleted by the Nuxeo bulk engine: the flowfile is penalized and put back in the input queue until the "
+        + "command is done, then its content is replaced by the final bulk status.")
+@SeeAlso({ GetNuxeoDocument.class, GetNuxeoBlob.class, ExecuteNuxeoBulkAction.class })
 @ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID {nx-docid}"),
-        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Document Path {nx-path}") })
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Document Path {nx-path}"),
+        @ReadsAttribute(attribute = "nx-query", description = "NXQL selecting the documents, in bulk mode"),
+        @ReadsAttribute(attribute = "nx-docids", description = "Document IDs, in bulk mode"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_BULK_COMMAND, description = "Command to follow, set once submitted") })
 @WritesAttributes({
         @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Added for each document deleted"),
         @WritesAttribute(attribute = "nx-trashed", description = "True if document trashed"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_COMMAND, description = "Bulk command ID"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_STATE, description = "Bulk command state"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_PROCESSED, description = "Number of processed documents"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_ERRORS, description = "Number of documents in error"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_TOTAL, description = "Number of selected documents"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
@@ -70,13 +89,52 @@ public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
                                                                                                     StandardValidators.BOOLEAN_VALIDATOR)
                                                                                             .build();
 
+    public static final PropertyDescriptor BULK_MODE = new PropertyDescriptor.Builder().name("BULK_MODE")
+                                                                                       .displayName("Bulk Mode")
+                                                                                       .description(
+                                                                                               "Trash or delete the documents selected by the query or the list of IDs with a single bulk command.")
+                                                                                       .allowableValues(YES, NO)
+                                                                                       .defaultValue("false")
+                                                                                       .required(true)
+                                                                                       .addValidator(
+                                                                                               StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                       .build();
+
+    public static final PropertyDescriptor QUERY = new PropertyDescriptor.Builder().name("QUERY")
+                                                                                   .displayName("Query")
+                                                                                   .description(
+                                                                                           "NXQL selecting the documents, in bulk mode. {nx-query}")
+                                                                                   .expressionLanguageSupported(
+                                                                                           ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+                                                                                   .required(false)
+                                                                                   .addValidator(
+                                                                                           StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                   .build();
+
+    public static final PropertyDescriptor DOC_IDS = new PropertyDescriptor.Builder().name("DOC_IDS")
+                                                                                     .displayName("Document IDs")
+                                                                                     .description(
+                                                                                             "Comma or whitespace separated document IDs, in bulk mode when no query is set. {nx-docids}")
+                                                                                     .expressionLanguageSupported(
+                                                                                             ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+                                                                                     .required(false)
+                                                                                     .addValidator(
+                                                                                             StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                     .build();
+
+    protected BulkCommands bulkCommands;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
         descriptors.add(NUXEO_CLIENT_SERVICE);
         descriptors.add(TARGET_REPO);
+        descriptors.add(DOC_ID);
         descriptors.add(DOC_PATH);
         descriptors.add(TRASH_DOCUMENT);
+        descriptors.add(BULK_MODE);
+        descriptors.add(QUERY);
+        descriptors.add(DOC_IDS);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -85,6 +143,18 @@ public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.bulkCommands = new BulkCommands(this.nuxeoClientService.getHttpClient(), objectMapper());
+    }
+
+    @Override
+    protected void processorStopped(ProcessContext ctx) {
+        super.processorStopped(ctx);
+        this.bulkCommands = null;
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -93,24 +163,34 @@ public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
         }
 
         boolean useTrash = context.getProperty(TRASH_DOCUMENT).asBoolean();
-
-        try {
-            // Invoke document operation
-            Document doc = getDocument(context, flowFile);
-            if (doc == null) {
-                return;
+        if (context.getProperty(BULK_MODE).asBoolean()) {
+            if (StringUtils.isNotBlank(flowFile.getAttribute(VAR_BULK_COMMAND))) {
+                followBulkCommand(context, session, flowFile, this.bulkCommands);
+            } else {
+                submitBulkCommand(context, session, flowFile, useTrash);
             }
-            Repository rep = getRepository(context, flowFile);
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+            return;
+        }
+
+        DocRef ref = getDocRef(context, flowFile);
+        if (ref == null) {
+            session.putAttribute(flowFile, VAR_ERROR, "No document ID or path");
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
 
+        try {
+            // Act on the reference, no need to fetch the document first
             if (useTrash) {
-                doc = doc.trash();
-                session.putAttribute(flowFile, "nx-trashed", "true");
+                Document doc = getOperation(context, flowFile, "Document.Trash").input(ref).execute();
+                Map<String, String> attrs = new HashMap<>(4);
+                attrs.put(VAR_DOC_ID, doc.getId());
+                attrs.put("nx-trashed", "true");
+                flowFile = session.putAllAttributes(flowFile, attrs);
 
                 // Convert and write to JSON
-                String json = nxClient().getConverterFactory().writeJSON(doc);
-                try (OutputStream out = session.write(flowFile)) {
-                    IOUtils.write(json, out, UTF8);
+                try {
+                    writeJSON(session, flowFile, doc);
                 } catch (IOException e) {
                     session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
                     session.transfer(flowFile, REL_FAILURE);
@@ -118,7 +198,11 @@ public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
                 }
             } else {
                 // Remove document
-                rep.deleteDocument(doc);
+                getOperation(context, flowFile, "Document.Delete").input(ref).voidOperation(true).execute();
+                String docId = getArg(context, flowFile, VAR_DOC_ID, DOC_ID);
+                if (StringUtils.isNotBlank(docId)) {
+                    session.putAttribute(flowFile, VAR_DOC_ID, docId);
+                }
             }
 
             session.transfer(flowFile, REL_SUCCESS);
@@ -127,4 +211,54 @@ public class DeleteNuxeoDocument extends AbstractNuxeoProcessor {
             session.transfer(flowFile, REL_FAILURE);
         }
     }
+
+    protected void submitBulkCommand(ProcessContext context, ProcessSession session, FlowFile flowFile,
+            boolean useTrash) {
+        String query = getBulkQuery(context, flowFile);
+        if (query == null) {
+            session.putAttribute(flowFile, VAR_ERROR, "No query or document IDs");
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        String action;
+        if (useTrash) {
+            action = "trash";
+            params.put("value", Boolean.TRUE);
+        } else {
+            action = "automation";
+            params.put("operationId", "Document.Delete");
+        }
+
+        // Submit the command, status is checked on the next triggers
+        try {
+            JsonNode status = this.bulkCommands.submit(getApiUrl(context, flowFile), action, query, params);
+            flowFile = putBulkStatus(session, flowFile, status);
+        } catch (IOException e) {
+            getLogger().error("Unable to submit bulk " + action, e);
+            session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+        session.transfer(session.penalize(flowFile));
+    }
+
+    /**
+     * The query to run, built from the document IDs when not set.
+     */
+    protected String getBulkQuery(ProcessContext context, FlowFile flowFile) {
+        String query = getArg(context, flowFile, "nx-query", QUERY);
+        if (StringUtils.isNotBlank(query)) {
+            return query;
+        }
+        String ids = getArg(context, flowFile, "nx-docids", DOC_IDS);
+        if (StringUtils.isBlank(ids)) {
+            return null;
+        }
+        String list = Arrays.stream(StringUtils.split(ids, ", \t\r\n"))
+                            .map(id -> "'" + id.replace("'", "\\'") + "'")
+                            .collect(Collectors.joining(", "));
+        return "SELECT * FROM Document WHERE ecm:uuid IN (" + list + ")";
+    }
 }
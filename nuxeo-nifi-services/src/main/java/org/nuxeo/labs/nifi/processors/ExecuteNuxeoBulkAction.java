@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.nuxeo.client.util.BulkCommands;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+@Tags({ "nuxeo", "bulk", "action", "query" })
+@CapabilityDescription("Run a Bulk Action (setProperties, trash, etc) on the documents selected by a NXQL query. The "
+        + "command runs in the Nuxeo bulk engine: the flowfile is penalized and put back in the input queue until the "
+        + "command is done, then its content is replaced by the final bulk status. Dynamic properties are the action "
+        + "parameters, e.g. the properties to set.")
+@SeeAlso({ ExecuteNuxeoQuery.class })
+@ReadsAttributes({ @ReadsAttribute(attribute = "nx-query", description = "NXQL selecting the documents"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_BULK_COMMAND, description = "Command to follow, set once submitted") })
+@WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_COMMAND, description = "Bulk command ID"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_STATE, description = "Bulk command state"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_PROCESSED, description = "Number of processed documents"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_ERRORS, description = "Number of documents in error"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_BULK_TOTAL, description = "Number of selected documents"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class ExecuteNuxeoBulkAction extends AbstractNuxeoDynamicProcessor {
+
+    public static final PropertyDescriptor ACTION = new PropertyDescriptor.Builder().name("ACTION")
+                                                                                    .displayName("Bulk Action")
+                                                                                    .description(
+                                                                                            "Bulk action identifier.")
+                                                                                    .expressionLanguageSupported(
+                                                                                            ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+                                                                                    .defaultValue("setProperties")
+                                                                                    .required(true)
+                                                                                    .addValidator(
+                                                                                            StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                    .build();
+
+    public static final PropertyDescriptor QUERY = new PropertyDescriptor.Builder().name("QUERY")
+                                                                                   .displayName("Query")
+                                                                                   .description(
+                                                                                           "NXQL selecting the documents. {nx-query}")
+                                                                                   .expressionLanguageSupported(
+                                                                                           ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+                                                                                   .required(false)
+                                                                                   .addValidator(
+                                                                                           StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                   .build();
+
+    protected BulkCommands bulkCommands;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(NUXEO_CLIENT_SERVICE);
+        descriptors.add(TARGET_REPO);
+        descriptors.add(ACTION);
+        descriptors.add(QUERY);
+        descriptors.add(PROPERTY_TYPES);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.bulkCommands = new BulkCommands(this.nuxeoClientService.getHttpClient(), objectMapper());
+    }
+
+    @Override
+    protected void processorStopped(ProcessContext ctx) {
+        super.processorStopped(ctx);
+        this.bulkCommands = null;
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        if (StringUtils.isNotBlank(flowFile.getAttribute(VAR_BULK_COMMAND))) {
+            followBulkCommand(context, session, flowFile, this.bulkCommands);
+            return;
+        }
+
+        // Submit the command, status is checked on the next triggers
+        String action = getArg(context, flowFile, null, ACTION);
+        String query = getArg(context, flowFile, "nx-query", QUERY);
+        try {
+            JsonNode status = this.bulkCommands.submit(getApiUrl(context, flowFile), action, query,
+                    getParameters(context, flowFile));
+            flowFile = putBulkStatus(session, flowFile, status);
+        } catch (IOException e) {
+            getLogger().error("Unable to submit bulk action: " + action, e);
+            session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
+        session.transfer(session.penalize(flowFile));
+    }
+
+    protected Map<String, Object> getParameters(ProcessContext ctx, FlowFile ff) {
+        return getDynamicValues(ctx, ff);
+    }
+
+}
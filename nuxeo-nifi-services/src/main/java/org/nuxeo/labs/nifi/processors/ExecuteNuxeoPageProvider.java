@@ -17,14 +17,14 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
@@ -199,19 +199,13 @@ public class ExecuteNuxeoPageProvider extends AbstractNuxeoProcessor {
             // Check errors...
             if (docs.hasError()) {
                 // Reset parameters to those provided by config or input
-                session.putAttribute(flowFile, "nx-provider", providerName);
-                session.putAttribute(flowFile, "nx-page-size", pageSize);
-                session.putAttribute(flowFile, "nx-page-index", currentPageIndex);
-                session.putAttribute(flowFile, "nx-max-results", maxResults);
-                if (sortBy != null) {
-                    session.putAttribute(flowFile, "nx-sort-by", sortBy);
-                }
-                if (sortOrder != null) {
-                    session.putAttribute(flowFile, "nx-sort-order", sortOrder);
-                }
-                if (queryParams != null) {
-                    session.putAttribute(flowFile, "nx-query-params", queryParams);
-                }
+                Map<String, String> attrs = new HashMap<>();
+                attrs.put("nx-provider", providerName);
+                attrs.put("nx-page-size", pageSize);
+                attrs.put("nx-page-index", currentPageIndex);
+                attrs.put("nx-max-results", maxResults);
+                putSortAttributes(attrs, sortBy, sortOrder, queryParams);
+                flowFile = session.putAllAttributes(flowFile, attrs);
                 session.transfer(flowFile, REL_FAILURE);
                 return;
             }
@@ -220,32 +214,24 @@ public class ExecuteNuxeoPageProvider extends AbstractNuxeoProcessor {
             if (docs.isNextPageAvailable()) {
                 FlowFile nextPage = session.create(flowFile);
                 // Get next page parameters provided by input
-                session.putAttribute(nextPage, "nx-provider", providerName);
-                session.putAttribute(nextPage, "nx-page-size", Integer.toString(docs.getPageSize()));
-                session.putAttribute(nextPage, "nx-page-index", Integer.toString(docs.getCurrentPageIndex() + 1));
-                session.putAttribute(nextPage, "nx-max-results", Integer.toString(docs.getResultsCount()));
-                if (sortBy != null) {
-                    session.putAttribute(nextPage, "nx-sort-by", sortBy);
-                }
-                if (sortOrder != null) {
-                    session.putAttribute(nextPage, "nx-sort-order", sortOrder);
-                }
-                if (queryParams != null) {
-                    session.putAttribute(nextPage, "nx-query-params", queryParams);
-                }
+                Map<String, String> attrs = new HashMap<>();
+                attrs.put("nx-provider", providerName);
+                attrs.put("nx-page-size", Integer.toString(docs.getPageSize()));
+                attrs.put("nx-page-index", Integer.toString(docs.getCurrentPageIndex() + 1));
+                attrs.put("nx-max-results", Integer.toString(docs.getResultsCount()));
+                putSortAttributes(attrs, sortBy, sortOrder, queryParams);
+                nextPage = session.putAllAttributes(nextPage, attrs);
                 session.transfer(nextPage, REL_NEXT_PAGE);
             }
 
             // Write documents to flowfile
             for (Document doc : docs.getDocuments()) {
                 FlowFile childFlow = session.create(flowFile);
-                session.putAttribute(childFlow, VAR_ENTITY_TYPE, doc.getEntityType());
-                session.putAttribute(childFlow, VAR_DOC_ID, doc.getId());
+                childFlow = putDocumentAttributes(session, childFlow, doc.getEntityType(), doc.getId());
 
                 // Convert and write to JSON
-                String json = nxClient().getConverterFactory().writeJSON(doc);
-                try (OutputStream out = session.write(childFlow)) {
-                    IOUtils.write(json, out, UTF8);
+                try {
+                    writeJSON(session, childFlow, doc);
                 } catch (IOException e) {
                     session.putAttribute(childFlow, VAR_ERROR, e.getMessage());
                     session.transfer(childFlow, REL_FAILURE);
@@ -262,4 +248,17 @@ public class ExecuteNuxeoPageProvider extends AbstractNuxeoProcessor {
         }
         session.transfer(flowFile, REL_ORIGINAL);
     }
+
+    protected void putSortAttributes(Map<String, String> attrs, String sortBy, String sortOrder,
+            String queryParams) {
+        if (sortBy != null) {
+            attrs.put("nx-sort-by", sortBy);
+        }
+        if (sortOrder != null) {
+            attrs.put("nx-sort-order", sortOrder);
+        }
+        if (queryParams != null) {
+            attrs.put("nx-query-params", queryParams);
+        }
+    }
 }
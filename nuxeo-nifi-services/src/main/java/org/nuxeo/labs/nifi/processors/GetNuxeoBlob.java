@@ -19,13 +19,18 @@ package org.nuxeo.labs.nifi.processors;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
@@ -37,8 +42,12 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.distributed.cache.client.Deserializer;
+import org.apache.nifi.distributed.cache.client.DistributedMapCacheClient;
+import org.apache.nifi.distributed.cache.client.Serializer;
 import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
@@ -49,9 +58,15 @@ import org.nuxeo.client.objects.Document;
 import org.nuxeo.client.objects.Repository;
 import org.nuxeo.client.objects.blob.StreamBlob;
 import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.util.DigestCopy;
+import org.nuxeo.client.util.RangedDownload;
+
+import okhttp3.HttpUrl;
 
 @Tags({ "nuxeo", "get", "blob" })
-@CapabilityDescription("Retrieve the blob data from Nuxeo for a given document.")
+@CapabilityDescription("Retrieve the blob data from Nuxeo for a given document. With a digest cache, blobs whose digest "
+        + "matches the last download are routed to 'unchanged' without transferring any bytes. The content digest is "
+        + "computed while downloading and checked against the server digest when the blob metadata is known.")
 @SeeAlso({ NuxeoBlobOperation.class, UploadNuxeoBlob.class })
 @ReadsAttributes({
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID to use if the path isn't specified"),
@@ -59,6 +74,7 @@ import org.nuxeo.client.spi.NuxeoClientException;
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_XPATH, description = "X-Path to use, defaults to file:content") })
 @WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Added if not present"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_FILENAME, description = "Filename of the blob"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_DIGEST, description = "Hex digest of the downloaded content"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class GetNuxeoBlob extends AbstractNuxeoProcessor {
@@ -76,6 +92,84 @@ public class GetNuxeoBlob extends AbstractNuxeoProcessor {
                                                                                            StandardValidators.NON_BLANK_VALIDATOR)
                                                                                    .build();
 
+    public static final PropertyDescriptor RANGED_DOWNLOAD = new PropertyDescriptor.Builder().name("RANGED_DOWNLOAD")
+                                                                                             .displayName(
+                                                                                                     "Ranged Download")
+                                                                                             .description(
+                                                                                                     "Download the blob with concurrent HTTP Range requests and verify its digest.")
+                                                                                             .allowableValues(YES, NO)
+                                                                                             .defaultValue("false")
+                                                                                             .required(true)
+                                                                                             .addValidator(
+                                                                                                     StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                             .build();
+
+    public static final PropertyDescriptor RANGE_CONCURRENCY = new PropertyDescriptor.Builder().name(
+            "RANGE_CONCURRENCY")
+                                                                                               .displayName(
+                                                                                                       "Range Concurrency")
+                                                                                               .description(
+                                                                                                       "Number of segments downloaded concurrently per blob.")
+                                                                                               .defaultValue("4")
+                                                                                               .required(false)
+                                                                                               .addValidator(
+                                                                                                       StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                               .build();
+
+    /** Segments are buffered in byte arrays */
+    protected static final long MAX_RANGE_SIZE = 1024L * 1024 * 1024;
+
+    public static final PropertyDescriptor RANGE_SIZE = new PropertyDescriptor.Builder().name("RANGE_SIZE")
+                                                                                        .displayName("Range Size")
+                                                                                        .description(
+                                                                                                "Size of each downloaded segment, at most 1 GB. Up to concurrency x size is buffered in memory.")
+                                                                                        .defaultValue("8 MB")
+                                                                                        .required(false)
+                                                                                        .addValidator(
+                                                                                                StandardValidators.createDataSizeBoundsValidator(
+                                                                                                        1, MAX_RANGE_SIZE))
+                                                                                        .build();
+
+    public static final PropertyDescriptor DIGEST_CACHE = new PropertyDescriptor.Builder().name("DIGEST_CACHE")
+                                                                                          .displayName(
+                                                                                                  "Digest Cache Service")
+                                                                                          .description(
+                                                                                                  "Index of downloaded blob digests, keyed by repository, document ID and xpath. When set, blobs whose digest didn't change are not downloaded again.")
+                                                                                          .required(false)
+                                                                                          .identifiesControllerService(
+                                                                                                  DistributedMapCacheClient.class)
+                                                                                          .build();
+
+    public static final PropertyDescriptor VERIFY_DIGEST = new PropertyDescriptor.Builder().name("VERIFY_DIGEST")
+                                                                                           .displayName(
+                                                                                                   "Verify Digest")
+                                                                                           .description(
+                                                                                                   "Retrieve the blob metadata and check the downloaded content against the server digest.")
+                                                                                           .allowableValues(YES, NO)
+                                                                                           .defaultValue("false")
+                                                                                           .required(true)
+                                                                                           .addValidator(
+                                                                                                   StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                           .build();
+
+    public static final Relationship REL_UNCHANGED = new Relationship.Builder().name("unchanged")
+                                                                               .description(
+                                                                                       "Blob unchanged since last download")
+                                                                               .build();
+
+    private static final Serializer<String> STRING_SERIALIZER = (value, out) -> out.write(value.getBytes(UTF8));
+
+    private static final Deserializer<String> STRING_DESERIALIZER = input -> input == null || input.length == 0 ? null
+            : new String(input, UTF8);
+
+    protected DistributedMapCacheClient digestCache;
+
+    protected RangedDownload rangedDownload;
+
+    protected ExecutorService rangeExecutor;
+
+    protected boolean verifyDigest = false;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -83,15 +177,46 @@ public class GetNuxeoBlob extends AbstractNuxeoProcessor {
         descriptors.add(TARGET_REPO);
         descriptors.add(DOC_PATH);
         descriptors.add(XPATH);
+        descriptors.add(RANGED_DOWNLOAD);
+        descriptors.add(RANGE_CONCURRENCY);
+        descriptors.add(RANGE_SIZE);
+        descriptors.add(DIGEST_CACHE);
+        descriptors.add(VERIFY_DIGEST);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
         relationships.add(REL_SUCCESS);
         relationships.add(REL_ORIGINAL);
         relationships.add(REL_FAILURE);
+        relationships.add(REL_UNCHANGED);
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.digestCache = ctx.getProperty(DIGEST_CACHE).asControllerService(DistributedMapCacheClient.class);
+        this.verifyDigest = ctx.getProperty(VERIFY_DIGEST).asBoolean();
+        if (ctx.getProperty(RANGED_DOWNLOAD).asBoolean()) {
+            int concurrency = ctx.getProperty(RANGE_CONCURRENCY).asInteger();
+            int size = ctx.getProperty(RANGE_SIZE).asDataSize(DataUnit.B).intValue();
+            this.rangeExecutor = Executors.newFixedThreadPool(concurrency);
+            this.rangedDownload = new RangedDownload(this.nuxeoClientService.getHttpClient(), this.rangeExecutor,
+                    concurrency, size);
+        }
+    }
+
+    @Override
+    protected void processorStopped(ProcessContext ctx) {
+        super.processorStopped(ctx);
+        if (this.rangeExecutor != null) {
+            this.rangeExecutor.shutdownNow();
+        }
+        this.rangeExecutor = null;
+        this.rangedDownload = null;
+        this.digestCache = null;
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -108,31 +233,155 @@ public class GetNuxeoBlob extends AbstractNuxeoProcessor {
             return;
         }
 
+        // Blob metadata gives the length to split and the digest to compare
+        Map<String, Object> meta = null;
+        if (this.rangedDownload != null || this.digestCache != null || this.verifyDigest) {
+            try {
+                Repository rep = getRepository(context, flowFile);
+                Document doc = docId != null ? rep.fetchDocumentById(docId) : rep.fetchDocumentByPath(path);
+                docId = doc.getId();
+                meta = getBlobProperties(doc, xpath);
+            } catch (NuxeoClientException nce) {
+                getLogger().error("Unable to retrieve blob", nce);
+                FlowFile err = session.create(flowFile);
+                session.putAttribute(err, VAR_ERROR, nce.getMessage());
+                session.transfer(err, REL_FAILURE);
+                session.transfer(flowFile, REL_ORIGINAL);
+                return;
+            }
+        }
+
+        // Skip binaries already downloaded
+        String digest = meta != null ? (String) meta.get("digest") : null;
+        // Document IDs are only unique within a repository
+        String repo = getRepositoryName(context, flowFile);
+        String digestKey = (repo != null ? repo : DEFAULT_REPOSITORY) + "/" + docId + "/" + xpath;
+        if (this.digestCache != null && digest != null && digest.equals(getKnownDigest(digestKey))) {
+            session.putAttribute(flowFile, VAR_DOC_ID, docId);
+            session.transfer(flowFile, REL_UNCHANGED);
+            return;
+        }
+
         // Create success path
         FlowFile blobFile = session.create(flowFile);
+        if (this.rangedDownload != null) {
+            if (rangedDownload(context, session, flowFile, blobFile, docId, xpath, meta)) {
+                putKnownDigest(digestKey, digest);
+            }
+            session.transfer(flowFile, REL_ORIGINAL);
+            return;
+        }
+        Map<String, String> attrs = new HashMap<>();
         try {
             // Invoke document operation
             Repository rep = getRepository(context, flowFile);
             StreamBlob blob = docId != null ? rep.streamBlobById(docId, xpath) : rep.streamBlobByPath(path, xpath);
-            session.putAttribute(blobFile, VAR_XPATH, xpath);
-            session.putAttribute(blobFile, VAR_FILENAME, blob.getFilename());
-            session.putAttribute(blobFile, "mime.type", blob.getMimeType());
+            attrs.put(VAR_XPATH, xpath);
+            attrs.put(VAR_FILENAME, blob.getFilename());
+            attrs.put("mime.type", blob.getMimeType());
 
-            // Write to flowfile
+            // Write to flowfile, hashing with the server algorithm when known
+            MessageDigest md = meta != null ? getMessageDigest((String) meta.get("digestAlgorithm")) : null;
+            boolean verify = md != null && digest != null;
+            if (md == null) {
+                md = DigestCopy.getInstance(DigestCopy.DEFAULT_ALGORITHM);
+            }
+            String hash;
             try (InputStream in = blob.getStream(); OutputStream out = session.write(blobFile)) {
-                IOUtils.copy(in, out);
-            } catch (IOException e) {
-                session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
-                session.transfer(flowFile, REL_FAILURE);
-                return;
+                hash = DigestCopy.copy(in, out, md);
+            }
+            if (verify && !digest.equalsIgnoreCase(hash)) {
+                throw new IOException("Digest mismatch for " + docId + "/" + xpath);
             }
 
+            attrs.put(VAR_DIGEST, hash);
+            blobFile = session.putAllAttributes(blobFile, attrs);
             session.transfer(blobFile, REL_SUCCESS);
-        } catch (NuxeoClientException nce) {
-            getLogger().error("Unable to retrieve blob", nce);
-            session.putAttribute(blobFile, VAR_ERROR, nce.getMessage());
+            putKnownDigest(digestKey, digest);
+        } catch (NuxeoClientException | IOException e) {
+            getLogger().error("Unable to retrieve blob", e);
+            attrs.put(VAR_ERROR, e.getMessage());
+            blobFile = session.putAllAttributes(blobFile, attrs);
             session.transfer(blobFile, REL_FAILURE);
         }
         session.transfer(flowFile, REL_ORIGINAL);
     }
+
+    protected boolean rangedDownload(ProcessContext context, ProcessSession session, FlowFile flowFile,
+            FlowFile blobFile, String docId, String xpath, Map<String, Object> meta) {
+        Map<String, String> attrs = new HashMap<>();
+        attrs.put(VAR_DOC_ID, docId);
+        attrs.put(VAR_XPATH, xpath);
+        attrs.put(VAR_FILENAME, (String) meta.get("name"));
+        attrs.put("mime.type", (String) meta.get("mime-type"));
+        try {
+            long length = Long.parseLong(String.valueOf(meta.get("length")));
+            String digest = (String) meta.get("digest");
+            MessageDigest md = getMessageDigest((String) meta.get("digestAlgorithm"));
+
+            // Write to flowfile
+            String url = HttpUrl.get(getDocumentUrl(context, flowFile, docId))
+                                .newBuilder()
+                                .addPathSegment("@blob")
+                                .addPathSegments(xpath)
+                                .build()
+                                .toString();
+            try (OutputStream out = session.write(blobFile)) {
+                this.rangedDownload.download(url, length, md == null ? out : new DigestOutputStream(out, md));
+            }
+            if (md != null) {
+                String hash = DigestCopy.toHex(md.digest());
+                if (digest != null && !digest.equalsIgnoreCase(hash)) {
+                    throw new IOException("Digest mismatch for " + url);
+                }
+                attrs.put(VAR_DIGEST, hash);
+            }
+            blobFile = session.putAllAttributes(blobFile, attrs);
+            session.transfer(blobFile, REL_SUCCESS);
+            return true;
+        } catch (IOException | NumberFormatException e) {
+            getLogger().error("Unable to retrieve blob", e);
+            attrs.put(VAR_ERROR, e.getMessage());
+            blobFile = session.putAllAttributes(blobFile, attrs);
+            session.transfer(blobFile, REL_FAILURE);
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> getBlobProperties(Document doc, String xpath) {
+        Map<String, Object> meta = (Map<String, Object>) doc.getPropertyValue(xpath);
+        if (meta == null) {
+            throw new NuxeoClientException("No blob at " + xpath);
+        }
+        return meta;
+    }
+
+    protected String getKnownDigest(String key) {
+        try {
+            return this.digestCache.get(key, STRING_SERIALIZER, STRING_DESERIALIZER);
+        } catch (IOException e) {
+            getLogger().warn("Unable to read digest index: " + key, e);
+            return null;
+        }
+    }
+
+    protected void putKnownDigest(String key, String digest) {
+        if (this.digestCache == null || digest == null) {
+            return;
+        }
+        try {
+            this.digestCache.put(key, digest, STRING_SERIALIZER, STRING_SERIALIZER);
+        } catch (IOException e) {
+            getLogger().warn("Unable to update digest index: " + key, e);
+        }
+    }
+
+    protected MessageDigest getMessageDigest(String algorithm) {
+        MessageDigest md = DigestCopy.getInstance(algorithm);
+        if (md == null && algorithm != null) {
+            getLogger().warn("Unsupported digest algorithm: " + algorithm);
+        }
+        return md;
+    }
 }
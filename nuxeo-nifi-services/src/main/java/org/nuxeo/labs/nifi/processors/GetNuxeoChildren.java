@@ -17,14 +17,12 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -101,13 +99,11 @@ public class GetNuxeoChildren extends AbstractNuxeoProcessor {
             // Write documents to flowfile
             for (Document doc : docs.getDocuments()) {
                 FlowFile childFlow = flowFile == null ? session.create() : session.create(flowFile);
-                session.putAttribute(childFlow, VAR_ENTITY_TYPE, doc.getEntityType());
-                session.putAttribute(childFlow, VAR_DOC_ID, doc.getId());
+                childFlow = putDocumentAttributes(session, childFlow, doc.getEntityType(), doc.getId());
 
                 // Convert and write to JSON
-                String json = nxClient().getConverterFactory().writeJSON(doc);
-                try (OutputStream out = session.write(childFlow)) {
-                    IOUtils.write(json, out, UTF8);
+                try {
+                    writeJSON(session, childFlow, doc);
                 } catch (IOException e) {
                     session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
                     session.transfer(flowFile, REL_FAILURE);
@@ -17,14 +17,12 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -90,13 +88,11 @@ public class GetNuxeoDocumentACP extends AbstractNuxeoProcessor {
 
             // Fetch ACP/ACL
             ACP acp = rep.fetchACPById(doc.getId());
-            session.putAttribute(flowFile, VAR_ENTITY_TYPE, acp.getEntityType());
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+            flowFile = putDocumentAttributes(session, flowFile, acp.getEntityType(), doc.getId());
 
             // Convert and write to JSON
-            String json = nxClient().getConverterFactory().writeJSON(acp);
-            try (OutputStream out = session.write(flowFile)) {
-                IOUtils.write(json, out, UTF8);
+            try {
+                writeJSON(session, flowFile, acp);
             } catch (IOException e) {
                 session.putAttribute(flowFile, VAR_ERROR, e.getMessage());
                 session.transfer(flowFile, REL_FAILURE);
@@ -17,14 +17,14 @@
 package org.nuxeo.labs.nifi.processors;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -84,13 +84,14 @@ public class GetNuxeoWorkflows extends AbstractNuxeoProcessor {
             // Write documents to flowfile
             for (Workflow wf : wfs) {
                 FlowFile childFlow = session.create(flowFile);
-                session.putAttribute(childFlow, VAR_ENTITY_TYPE, wf.getEntityType());
-                session.putAttribute(childFlow, "nx-workflow-id", wf.getId());
+                Map<String, String> attrs = new HashMap<>(4);
+                attrs.put(VAR_ENTITY_TYPE, wf.getEntityType());
+                attrs.put("nx-workflow-id", wf.getId());
+                childFlow = session.putAllAttributes(childFlow, attrs);
 
                 // Convert and write to JSON
-                String json = nxClient().getConverterFactory().writeJSON(wf);
-                try (OutputStream out = session.write(childFlow)) {
-                    IOUtils.write(json, out, UTF8);
+                try {
+                    writeJSON(session, childFlow, wf);
                 } catch (IOException e) {
                     continue;
                 }
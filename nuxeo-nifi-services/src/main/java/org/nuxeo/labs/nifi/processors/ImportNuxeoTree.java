@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.nuxeo.client.objects.Document;
+import org.nuxeo.client.spi.NuxeoClientRemoteException;
+import org.nuxeo.client.util.FolderCache;
+import org.nuxeo.client.util.FolderCache.FolderResolver;
+
+@Tags({ "nuxeo", "create", "import", "tree", "document" })
+@CapabilityDescription("Import a tree of documents in any order. Missing parent folders are created parents first and "
+        + "at most once, their identifiers are cached and documents are created by parent identifier, with sibling "
+        + "subtrees imported concurrently. Documents of the folder type are merged with existing folders.")
+@SeeAlso({ CreateNuxeoDocument.class })
+@ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_NAME, description = "Document name"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Parent document path"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TYPE, description = "Document type (File, Picture, etc)"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TITLE, description = "Document title") })
+@WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class ImportNuxeoTree extends AbstractNuxeoDynamicProcessor {
+
+    public static final PropertyDescriptor CONCURRENCY = new PropertyDescriptor.Builder().name("CONCURRENCY")
+                                                                                         .displayName("Concurrency")
+                                                                                         .description(
+                                                                                                 "Number of documents created concurrently.")
+                                                                                         .defaultValue("8")
+                                                                                         .required(true)
+                                                                                         .addValidator(
+                                                                                                 StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                         .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder().name("BATCH_SIZE")
+                                                                                        .displayName("Batch Size")
+                                                                                        .description(
+                                                                                                "Maximum number of flowfiles imported per trigger.")
+                                                                                        .defaultValue("100")
+                                                                                        .required(true)
+                                                                                        .addValidator(
+                                                                                                StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                        .build();
+
+    protected ExecutorService executor;
+
+    protected FolderCache folderCache;
+
+    protected String folderType;
+
+    protected int batchSize = 100;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(NUXEO_CLIENT_SERVICE);
+        descriptors.add(TARGET_REPO);
+        descriptors.add(DOC_PATH);
+        descriptors.add(CreateNuxeoDocument.DOC_NAME);
+        descriptors.add(DOC_TYPE);
+        descriptors.add(DOC_TITLE);
+        descriptors.add(FOLDER_TYPE);
+        descriptors.add(FOLDER_CACHE_SIZE);
+        descriptors.add(CONCURRENCY);
+        descriptors.add(BATCH_SIZE);
+        descriptors.add(PROPERTY_TYPES);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.folderType = ctx.getProperty(FOLDER_TYPE).getValue();
+        this.folderCache = new FolderCache(ctx.getProperty(FOLDER_CACHE_SIZE).asInteger());
+        this.batchSize = ctx.getProperty(BATCH_SIZE).asInteger();
+        this.executor = Executors.newFixedThreadPool(ctx.getProperty(CONCURRENCY).asInteger());
+    }
+
+    @Override
+    protected void processorStopped(ProcessContext ctx) {
+        super.processorStopped(ctx);
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+        this.executor = null;
+        this.folderCache = null;
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        List<FlowFile> flowFiles = session.get(this.batchSize);
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+
+        // Evaluate on this thread, only the server calls run concurrently
+        List<Future<Document>> results = new ArrayList<>(flowFiles.size());
+        for (FlowFile flowFile : flowFiles) {
+            String repo = getRepositoryName(context, flowFile);
+            String parent = getArg(context, flowFile, VAR_PATH, DOC_PATH);
+            String name = getArg(context, flowFile, VAR_NAME, CreateNuxeoDocument.DOC_NAME);
+            String type = getArg(context, flowFile, VAR_TYPE, DOC_TYPE);
+            if (StringUtils.isBlank(parent) || StringUtils.isBlank(name)) {
+                // Routed to failure below, keeping the flowfile order
+                results.add(null);
+                continue;
+            }
+            Map<String, Object> props = getProperties(context, flowFile, name);
+            results.add(this.executor.submit(
+                    () -> importDocument(context, flowFile, repo, parent, name, type, props)));
+        }
+
+        for (int i = 0; i < flowFiles.size(); i++) {
+            FlowFile flowFile = flowFiles.get(i);
+            if (results.get(i) == null) {
+                getLogger().error("No parent path or document name");
+                session.putAttribute(flowFile, VAR_ERROR, "No parent path or document name");
+                session.transfer(flowFile, REL_FAILURE);
+                continue;
+            }
+            try {
+                transferDocument(session, flowFile, results.get(i).get());
+            } catch (ExecutionException e) {
+                getLogger().error("Unable to import document", e.getCause());
+                session.putAttribute(flowFile, VAR_ERROR, String.valueOf(e.getCause()));
+                session.transfer(flowFile, REL_FAILURE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessException("Interrupted while importing documents", e);
+            }
+        }
+    }
+
+    protected Map<String, Object> getProperties(ProcessContext context, FlowFile flowFile, String name) {
+        String title = getArg(context, flowFile, VAR_TITLE, DOC_TITLE);
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("dc:title", title != null ? title : name);
+        props.putAll(getDynamicValues(context, flowFile));
+        return props;
+    }
+
+    protected Document importDocument(ProcessContext context, FlowFile flowFile, String repo, String parent,
+            String name, String type, Map<String, Object> props) {
+        FolderResolver resolver = (parentId, path, folder) -> getOrCreateFolder(repo, parentId, path, folder,
+                this.folderType);
+
+        if (this.folderType.equals(type)) {
+            // Folders may already exist as ancestors of other documents
+            String path = (parent.endsWith("/") ? parent : parent + "/") + name;
+            Document doc = Document.createWithId(this.folderCache.ensure(repo, path, resolver), null);
+            props.forEach(doc::setPropertyValue);
+            return getRepository(context, flowFile).updateDocument(doc);
+        }
+
+        String parentId = this.folderCache.ensure(repo, parent, resolver);
+        Document doc = Document.createWithName(name, type);
+        props.forEach(doc::setPropertyValue);
+        try {
+            return getRepository(context, flowFile).createDocumentById(parentId, doc);
+        } catch (NuxeoClientRemoteException nce) {
+            if (nce.getStatus() == 404) {
+                // Parent removed behind our back
+                this.folderCache.invalidate(repo, parent);
+            }
+            throw nce;
+        }
+    }
+
+}
@@ -10,6 +10,20 @@ public interface NuxeoAttributes {
 
     String VAR_BATCH = "nx-batch";
 
+    String VAR_BULK_COMMAND = "nx-bulk-command";
+
+    String VAR_BULK_ERRORS = "nx-bulk-errors";
+
+    String VAR_BULK_PROCESSED = "nx-bulk-processed";
+
+    String VAR_BULK_STATE = "nx-bulk-state";
+
+    String VAR_BULK_TOTAL = "nx-bulk-total";
+
+    String VAR_CHANGE_TOKEN = "nx-change-token";
+
+    String VAR_DIGEST = "nx-digest";
+
     String VAR_DOC_ID = "nx-docid";
 
     String VAR_ERROR = "nx-error";
@@ -30,6 +44,8 @@ public interface NuxeoAttributes {
 
     String VAR_TYPE = "nx-type";
 
+    String VAR_UPSERT_ACTION = "nx-upsert-action";
+
     String VAR_XPATH = "nx-xpath";
 
     String PROP_KEY_PATTERN = "[_:a-zA-Z][\\w:\\-\\.]*";
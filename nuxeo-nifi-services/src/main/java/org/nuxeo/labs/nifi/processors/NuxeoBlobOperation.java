@@ -35,25 +35,42 @@ import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.components.PropertyDescriptor;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Operation;
 import org.nuxeo.client.objects.blob.StreamBlob;
+import org.nuxeo.client.objects.upload.BatchUpload;
 import org.nuxeo.client.spi.NuxeoClientException;
 
 @Tags({ "nuxeo", "operation", "execution", "blob" })
 @CapabilityDescription("Execute an operation with a Blob as input.")
 @SeeAlso({ StartNuxeoWorkflow.class })
 @ReadsAttributes({ @ReadsAttribute(attribute = "filename", description = "File name assocaited with flowfile"),
+        @ReadsAttribute(attribute = "mime.type", description = "Mime type of the flowfile content"),
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_OPERATION, description = "Nuxeo operation identifier") })
 @WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type") })
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class NuxeoBlobOperation extends AbstractNuxeoOperationProcessor {
 
+    public static final PropertyDescriptor BATCH_THRESHOLD = new PropertyDescriptor.Builder().name("BATCH_THRESHOLD")
+                                                                                             .displayName(
+                                                                                                     "Batch Upload Threshold")
+                                                                                             .description(
+                                                                                                     "Content at least this large is uploaded to a batch first, and the operation gets the batch reference as input.")
+                                                                                             .required(false)
+                                                                                             .addValidator(
+                                                                                                     StandardValidators.DATA_SIZE_VALIDATOR)
+                                                                                             .build();
+
+    protected long batchThreshold = Long.MAX_VALUE;
+
     public NuxeoBlobOperation() {
         super();
     }
@@ -66,6 +83,7 @@ public class NuxeoBlobOperation extends AbstractNuxeoOperationProcessor {
         descriptors.add(OPERATION_ID);
         descriptors.add(SPLIT_RESPONSE);
         descriptors.add(FILTER_SCHEMAS);
+        descriptors.add(BATCH_THRESHOLD);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -75,6 +93,14 @@ public class NuxeoBlobOperation extends AbstractNuxeoOperationProcessor {
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.batchThreshold = ctx.getProperty(BATCH_THRESHOLD).isSet()
+                ? ctx.getProperty(BATCH_THRESHOLD).asDataSize(DataUnit.B).longValue()
+                : Long.MAX_VALUE;
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -85,15 +111,26 @@ public class NuxeoBlobOperation extends AbstractNuxeoOperationProcessor {
         // Evaluate target path
         String filename = getArg(context, flowFile, VAR_FILENAME, null);
         String opId = getArg(context, flowFile, VAR_OPERATION, OPERATION_ID);
+        String mimeType = flowFile.getAttribute(CoreAttributes.MIME_TYPE.key());
 
         if (filename == null) {
             filename = String.valueOf(flowFile.getId());
         }
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
 
         try {
             Operation op = nxClient().operation(opId);
             try (InputStream in = session.read(flowFile)) {
-                op.input(new StreamBlob(in, filename));
+                // Known length avoids a chunked request spooled by the server
+                StreamBlob blob = new StreamBlob(in, filename, mimeType, flowFile.getSize());
+                if (flowFile.getSize() >= this.batchThreshold) {
+                    BatchUpload batch = nxClient().batchUploadManager().createBatch().upload("0", blob);
+                    op.input(batch);
+                } else {
+                    op.input(blob);
+                }
                 enrichOperation(context, flowFile, op);
                 executeOperation(context, session, flowFile, op);
             } catch (IOException iox) {
@@ -19,7 +19,10 @@ package org.nuxeo.labs.nifi.processors;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.nifi.annotation.behavior.InputRequirement;
@@ -38,13 +41,16 @@ import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
-import org.nuxeo.client.objects.Document;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Operation;
 import org.nuxeo.client.objects.operation.DocRef;
+import org.nuxeo.client.objects.operation.DocRefs;
 import org.nuxeo.client.spi.NuxeoClientException;
 
 @Tags({ "nuxeo", "operation", "execution", "document" })
-@CapabilityDescription("Execute an operation with a Document as input.")
+@CapabilityDescription("Execute an operation with a Document as input. The document is referenced by ID or path, "
+        + "without being fetched. With an input batch size greater than 1, the documents of the flowfiles sharing "
+        + "the same repository, operation and parameters are given as a single document list input.")
 @SeeAlso({ StartNuxeoWorkflow.class })
 @ReadsAttributes({
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_OPERATION, description = "Nuxeo operation identifier"),
@@ -55,6 +61,22 @@ import org.nuxeo.client.spi.NuxeoClientException;
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class NuxeoDocumentOperation extends AbstractNuxeoOperationProcessor {
 
+    public static final PropertyDescriptor INPUT_BATCH_SIZE = new PropertyDescriptor.Builder().name(
+            "INPUT_BATCH_SIZE")
+                                                                                              .displayName(
+                                                                                                      "Input Batch Size")
+                                                                                              .description(
+                                                                                                      "Maximum number of flowfiles whose documents are given as a single input. Use 1 for operations that don't accept document lists. "
+                                                                                                              + "Only the flowfiles with the same repository, operation and parameters are grouped, the results of a group are children of its first flowfile. "
+                                                                                                              + "If the grouped call fails, the operation is run again for each flowfile of the group.")
+                                                                                              .defaultValue("1")
+                                                                                              .required(true)
+                                                                                              .addValidator(
+                                                                                                      StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                              .build();
+
+    protected int inputBatchSize = 1;
+
     public NuxeoDocumentOperation() {
         super();
     }
@@ -64,10 +86,12 @@ public class NuxeoDocumentOperation extends AbstractNuxeoOperationProcessor {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
         descriptors.add(NUXEO_CLIENT_SERVICE);
         descriptors.add(TARGET_REPO);
+        descriptors.add(DOC_ID);
         descriptors.add(DOC_PATH);
         descriptors.add(OPERATION_ID);
         descriptors.add(SPLIT_RESPONSE);
         descriptors.add(FILTER_SCHEMAS);
+        descriptors.add(INPUT_BATCH_SIZE);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -77,21 +101,41 @@ public class NuxeoDocumentOperation extends AbstractNuxeoOperationProcessor {
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.inputBatchSize = ctx.getProperty(INPUT_BATCH_SIZE).asInteger();
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        if (this.inputBatchSize > 1) {
+            onTriggerBatch(context, session);
+            return;
+        }
+
         FlowFile flowFile = session.get();
         if (flowFile == null) {
             return;
         }
 
-        // Evaluate target operation
         String opId = getArg(context, flowFile, VAR_OPERATION, OPERATION_ID);
+        invokeOperation(context, session, flowFile, opId, getOperationArgs(context, flowFile));
+    }
+
+    protected void invokeOperation(ProcessContext context, ProcessSession session, FlowFile flowFile, String opId,
+            Map<String, String> args) {
+        DocRef ref = getDocRef(context, flowFile);
+        if (ref == null) {
+            session.putAttribute(flowFile, VAR_ERROR, "No document ID or path");
+            session.transfer(flowFile, REL_FAILURE);
+            return;
+        }
 
         try {
-            Document doc = getDocument(context, flowFile);
-            Operation op = nxClient().operation(opId);
-            op.input(new DocRef(doc.getId()));
-            enrichOperation(context, flowFile, op);
+            Operation op = getOperation(context, flowFile, opId);
+            op.input(ref);
+            enrichOperation(op, args);
             executeOperation(context, session, flowFile, op);
             session.transfer(flowFile, REL_ORIGINAL);
         } catch (NuxeoClientException nce) {
@@ -101,4 +145,85 @@ public class NuxeoDocumentOperation extends AbstractNuxeoOperationProcessor {
         }
     }
 
+    protected void onTriggerBatch(final ProcessContext context, final ProcessSession session) {
+        List<FlowFile> flowFiles = session.get(this.inputBatchSize);
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+
+        // Group the document references by repository, operation and parameters
+        Map<OperationKey, List<FlowFile>> groups = new LinkedHashMap<>();
+        Map<OperationKey, DocRefs> inputs = new LinkedHashMap<>();
+        for (FlowFile flowFile : flowFiles) {
+            String opId = getArg(context, flowFile, VAR_OPERATION, OPERATION_ID);
+            DocRef ref = getDocRef(context, flowFile);
+            if (ref == null) {
+                session.putAttribute(flowFile, VAR_ERROR, "No document ID or path");
+                session.transfer(flowFile, REL_FAILURE);
+                continue;
+            }
+            OperationKey key = new OperationKey(getRepositoryName(context, flowFile), opId,
+                    getOperationArgs(context, flowFile));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(flowFile);
+            inputs.computeIfAbsent(key, k -> new DocRefs()).add(ref);
+        }
+
+        for (Map.Entry<OperationKey, List<FlowFile>> group : groups.entrySet()) {
+            OperationKey key = group.getKey();
+            List<FlowFile> members = group.getValue();
+            if (members.size() == 1) {
+                invokeOperation(context, session, members.get(0), key.opId, key.args);
+                continue;
+            }
+            try {
+                // Members share the repository of the first one
+                Operation op = getOperation(context, members.get(0), key.opId);
+                op.input(inputs.get(key));
+                enrichOperation(op, key.args);
+                executeOperation(context, session, members.get(0), op);
+                session.transfer(members, REL_ORIGINAL);
+            } catch (NuxeoClientException nce) {
+                // A single bad reference fails the whole list, find it out
+                getLogger().warn("Failed to invoke Document operation: " + key.opId + " on " + members.size()
+                        + " documents, retrying one by one", nce);
+                for (FlowFile flowFile : members) {
+                    invokeOperation(context, session, flowFile, key.opId, key.args);
+                }
+            }
+        }
+    }
+
+    /**
+     * Repository, operation and evaluated parameters shared by the flowfiles of a group.
+     */
+    protected static final class OperationKey {
+
+        final String repo;
+
+        final String opId;
+
+        final Map<String, String> args;
+
+        OperationKey(String repo, String opId, Map<String, String> args) {
+            this.repo = repo;
+            this.opId = opId;
+            this.args = args;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof OperationKey)) {
+                return false;
+            }
+            OperationKey other = (OperationKey) obj;
+            return Objects.equals(this.repo, other.repo) && Objects.equals(this.opId, other.opId)
+                    && this.args.equals(other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.repo, this.opId, this.args);
+        }
+    }
+
 }
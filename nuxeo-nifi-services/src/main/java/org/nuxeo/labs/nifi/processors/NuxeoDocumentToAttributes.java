@@ -16,14 +16,17 @@
  */
 package org.nuxeo.labs.nifi.processors;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
@@ -36,16 +39,21 @@ import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Document;
 import org.nuxeo.client.objects.EntityTypes;
 import org.nuxeo.client.spi.NuxeoClientException;
-import org.nuxeo.client.util.DocumentPath;
+import org.nuxeo.client.util.PathExpression;
+import org.nuxeo.client.util.PathTrie;
+import org.nuxeo.client.util.PropertyFlattener;
 
 @Tags({ "nuxeo", "document", "attributes" })
 @CapabilityDescription("Extract properties from a Nuxeo Document and set them as FlowFile attributes.")
@@ -60,6 +68,84 @@ import org.nuxeo.client.util.DocumentPath;
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
 
+    public static final PropertyDescriptor STREAMING = new PropertyDescriptor.Builder().name("STREAMING")
+                                                                                       .displayName(
+                                                                                               "Streaming Extraction")
+                                                                                       .description(
+                                                                                               "Extract the mapped properties while parsing the document JSON content, without building the document. Applies when all the paths start with a schema property followed by plain keys and indexes.")
+                                                                                       .allowableValues(YES, NO)
+                                                                                       .defaultValue("false")
+                                                                                       .required(true)
+                                                                                       .addValidator(
+                                                                                               StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                       .build();
+
+    public static final PropertyDescriptor FLATTEN = new PropertyDescriptor.Builder().name("FLATTEN")
+                                                                                     .displayName(
+                                                                                             "Flatten Properties")
+                                                                                     .description(
+                                                                                             "When no property is mapped, expand complex properties to one attribute per value, keyed by their dotted path (file:content.name, dc:subjects.0).")
+                                                                                     .allowableValues(YES, NO)
+                                                                                     .defaultValue("false")
+                                                                                     .required(true)
+                                                                                     .addValidator(
+                                                                                             StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                     .build();
+
+    public static final PropertyDescriptor INCLUDE_PROPERTIES = new PropertyDescriptor.Builder().name(
+            "INCLUDE_PROPERTIES")
+                                                                                                .displayName(
+                                                                                                        "Include Properties")
+                                                                                                .description(
+                                                                                                        "When no property is mapped, comma separated globs of the properties to set as attributes (dc:*, file:content). All if not set.")
+                                                                                                .required(false)
+                                                                                                .addValidator(
+                                                                                                        StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                                .build();
+
+    public static final PropertyDescriptor EXCLUDE_PROPERTIES = new PropertyDescriptor.Builder().name(
+            "EXCLUDE_PROPERTIES")
+                                                                                                .displayName(
+                                                                                                        "Exclude Properties")
+                                                                                                .description(
+                                                                                                        "When no property is mapped, comma separated globs of the properties not to set as attributes.")
+                                                                                                .required(false)
+                                                                                                .addValidator(
+                                                                                                        StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                                .build();
+
+    public static final PropertyDescriptor MAX_ATTRIBUTE_SIZE = new PropertyDescriptor.Builder().name(
+            "MAX_ATTRIBUTE_SIZE")
+                                                                                                .displayName(
+                                                                                                        "Max Attribute Size")
+                                                                                                .description(
+                                                                                                        "When no property is mapped, maximum size of an attribute value, longer values are truncated.")
+                                                                                                .required(false)
+                                                                                                .addValidator(
+                                                                                                        StandardValidators.DATA_SIZE_VALIDATOR)
+                                                                                                .build();
+
+    public static final PropertyDescriptor MAX_ATTRIBUTES_SIZE = new PropertyDescriptor.Builder().name(
+            "MAX_ATTRIBUTES_SIZE")
+                                                                                                 .displayName(
+                                                                                                         "Max Attributes Size")
+                                                                                                 .description(
+                                                                                                         "When no property is mapped, maximum size of all the attribute names and values, the following properties are skipped.")
+                                                                                                 .required(false)
+                                                                                                 .addValidator(
+                                                                                                         StandardValidators.DATA_SIZE_VALIDATOR)
+                                                                                                 .build();
+
+    /** Paths compiled at schedule time, by dynamic property index; null when evaluated per flowfile */
+    protected PathExpression[] paths;
+
+    /** All the paths merged, null if some are evaluated per flowfile */
+    protected PathTrie trie;
+
+    protected boolean streaming = false;
+
+    protected PropertyFlattener flattener;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -67,6 +153,12 @@ public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
         descriptors.add(TARGET_REPO);
         descriptors.add(DOC_PATH);
         descriptors.add(FILTER_SCHEMAS);
+        descriptors.add(STREAMING);
+        descriptors.add(FLATTEN);
+        descriptors.add(INCLUDE_PROPERTIES);
+        descriptors.add(EXCLUDE_PROPERTIES);
+        descriptors.add(MAX_ATTRIBUTE_SIZE);
+        descriptors.add(MAX_ATTRIBUTES_SIZE);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
@@ -75,6 +167,24 @@ public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.paths = new PathExpression[this.dynamicProperties.length];
+        for (int i = 0; i < this.paths.length; i++) {
+            if (isConstant(ctx, this.dynamicProperties[i])) {
+                this.paths[i] = PathExpression.compile(getArg(ctx, null, null, this.dynamicProperties[i]));
+            }
+        }
+        this.trie = this.paths.length == 0 || Arrays.asList(this.paths).contains(null) ? null
+                : new PathTrie(Arrays.asList(this.paths));
+        this.streaming = ctx.getProperty(STREAMING).asBoolean();
+        this.flattener = new PropertyFlattener(ctx.getProperty(FLATTEN).asBoolean(),
+                getGlobs(ctx, INCLUDE_PROPERTIES), getGlobs(ctx, EXCLUDE_PROPERTIES),
+                (int) getSize(ctx, MAX_ATTRIBUTE_SIZE, Integer.MAX_VALUE),
+                getSize(ctx, MAX_ATTRIBUTES_SIZE, Long.MAX_VALUE));
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -82,11 +192,40 @@ public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
             return;
         }
 
+        // Without any mapping, all the properties are flattened
+        boolean mapped = this.dynamicProperties.length > 0;
+        PathExpression[] exprs = this.paths;
+        PathTrie paths = this.trie;
+        if (paths == null && mapped) {
+            exprs = getPaths(context, flowFile);
+            paths = new PathTrie(Arrays.asList(exprs));
+        }
+
         try {
             Document doc = null;
 
-            // Try to load from existing context
+            // Try to extract from existing context, without building the document
             String entityType = flowFile.getAttribute(VAR_ENTITY_TYPE);
+            if (this.streaming && mapped && paths.isStreamable() && EntityTypes.DOCUMENT.equals(entityType)) {
+                PathTrie.Extraction extraction = null;
+                try (InputStream in = session.read(flowFile)) {
+                    extraction = paths.extract(in, objectMapper());
+                } catch (IOException iox) {
+                    getLogger().warn("Unable to extract properties from existing resource", iox);
+                }
+                if (extraction != null) {
+                    Map<String, String> attrs = new HashMap<>();
+                    putValues(attrs, exprs, extraction.getValues());
+                    if (extraction.getDocumentId() != null) {
+                        attrs.put(VAR_DOC_ID, extraction.getDocumentId());
+                    }
+                    flowFile = session.putAllAttributes(flowFile, attrs);
+                    session.transfer(flowFile, REL_SUCCESS);
+                    return;
+                }
+            }
+
+            // Try to load from existing context
             if (EntityTypes.DOCUMENT.equals(entityType)) {
                 try (InputStream in = session.read(flowFile)) {
                     String json = IOUtils.toString(in, UTF8);
@@ -102,32 +241,18 @@ public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
                 doc = getDocument(context, flowFile);
             }
 
-            if (this.dynamicProperties != null && !this.dynamicProperties.isEmpty()) {
-                DocumentPath path = new DocumentPath(doc);
-                for (PropertyDescriptor desc : this.dynamicProperties) {
-                    // Map the Document properties
-                    String key = desc.getName();
-                    String item = getArg(context, flowFile, null, desc);
-                    Object val = path.evaluate(item);
-                    if (val != null) {
-                        session.putAttribute(flowFile, key, val.toString());
-                    } else {
-                        getLogger().warn("No matching property: " + item);
-                    }
-                }
+            Map<String, String> attrs = new HashMap<>();
+            if (mapped) {
+                // Map the Document properties, in a single traversal
+                putValues(attrs, exprs, paths.evaluate(doc));
             } else {
                 // Map all properties that match
-                Map<String, Object> props = doc.getProperties();
-                for (Entry<String, Object> prop : props.entrySet()) {
-                    Object val = prop.getValue();
-                    if (val != null) {
-                        session.putAttribute(flowFile, prop.getKey(), val.toString());
-                    }
-                }
+                attrs.putAll(this.flattener.flatten(doc.getProperties()));
             }
 
-            session.putAttribute(flowFile, VAR_ENTITY_TYPE, doc.getEntityType());
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+            attrs.put(VAR_ENTITY_TYPE, doc.getEntityType());
+            attrs.put(VAR_DOC_ID, doc.getId());
+            flowFile = session.putAllAttributes(flowFile, attrs);
             session.transfer(flowFile, REL_SUCCESS);
         } catch (NuxeoClientException nce) {
             getLogger().error("Unable to store document", nce);
@@ -136,4 +261,38 @@ public class NuxeoDocumentToAttributes extends AbstractNuxeoDynamicProcessor {
         }
     }
 
+    protected void putValues(Map<String, String> attrs, PathExpression[] exprs, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            String key = this.dynamicProperties[i].getName();
+            if (values[i] != null) {
+                attrs.put(key, values[i].toString());
+            } else {
+                getLogger().warn("No matching property: " + exprs[i]);
+            }
+        }
+    }
+
+    protected static List<String> getGlobs(ProcessContext ctx, PropertyDescriptor desc) {
+        String globs = ctx.getProperty(desc).getValue();
+        if (globs == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(globs.split(",")).map(String::trim).filter(g -> !g.isEmpty()).collect(
+                Collectors.toList());
+    }
+
+    protected static long getSize(ProcessContext ctx, PropertyDescriptor desc, long defaultSize) {
+        PropertyValue value = ctx.getProperty(desc);
+        return value.isSet() ? Math.min(value.asDataSize(DataUnit.B).longValue(), defaultSize) : defaultSize;
+    }
+
+    protected PathExpression[] getPaths(ProcessContext context, FlowFile flowFile) {
+        PathExpression[] exprs = new PathExpression[this.paths.length];
+        for (int i = 0; i < exprs.length; i++) {
+            exprs[i] = this.paths[i] != null ? this.paths[i]
+                    : PathExpression.of(getArg(context, flowFile, null, this.dynamicProperties[i]));
+        }
+        return exprs;
+    }
+
 }
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.Collections;
+
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.PropertyValue;
+import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+
+/**
+ * How to resolve a property for a flowfile, decided once when the processor is scheduled: unset properties fall
+ * back to the attributes, constants are resolved once and only the values with expression language are evaluated
+ * per flowfile.
+ */
+final class PropertyPlan {
+
+    static final PropertyPlan UNSET = new PropertyPlan(null, null);
+
+    private final PropertyValue property;
+
+    /** Resolved value, null if evaluated per flowfile */
+    private final PropertyValue constant;
+
+    private PropertyPlan(PropertyValue property, PropertyValue constant) {
+        this.property = property;
+        this.constant = constant;
+    }
+
+    static PropertyPlan of(ProcessContext ctx, PropertyDescriptor desc) {
+        PropertyValue pv = ctx.getProperty(desc);
+        if (!pv.isSet()) {
+            return UNSET;
+        }
+        if (desc.isExpressionLanguageSupported() && pv.isExpressionLanguagePresent()) {
+            return new PropertyPlan(pv, null);
+        }
+        return new PropertyPlan(pv, evaluateConstant(desc, pv));
+    }
+
+    /**
+     * Resolve a value without expression language, the flowfile is not needed.
+     */
+    static PropertyValue evaluateConstant(PropertyDescriptor desc, PropertyValue pv) {
+        if (!desc.isExpressionLanguageSupported()) {
+            return pv;
+        }
+        // Flowfile scoped properties are expected to be evaluated against attributes
+        return desc.getExpressionLanguageScope() == ExpressionLanguageScope.FLOWFILE_ATTRIBUTES
+                ? pv.evaluateAttributeExpressions(Collections.emptyMap())
+                : pv.evaluateAttributeExpressions();
+    }
+
+    boolean isSet() {
+        return this.property != null;
+    }
+
+    boolean isConstant() {
+        return this.constant != null;
+    }
+
+    PropertyValue getValue(FlowFile ff) {
+        return this.constant != null ? this.constant : this.property.evaluateAttributeExpressions(ff);
+    }
+
+}
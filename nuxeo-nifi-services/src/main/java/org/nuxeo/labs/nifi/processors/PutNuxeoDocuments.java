@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.nuxeo.client.objects.Document;
+import org.nuxeo.client.objects.Documents;
+import org.nuxeo.client.objects.Operation;
+import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.spi.NuxeoClientRemoteException;
+import org.nuxeo.client.util.NuxeoJson;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+@Tags({ "nuxeo", "create", "document", "bulk" })
+@CapabilityDescription("Create many Nuxeo Documents with a single server call. The bulk operation receives a 'documents' "
+        + "JSON array of {parent, name, type, properties} entries and must return the created documents in the same "
+        + "order. When the bulk call fails, documents can be created one by one so each flowfile is routed on its own.")
+@SeeAlso({ CreateNuxeoDocument.class })
+@ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_NAME, description = "Document name"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Parent document path"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TYPE, description = "Document type (File, Picture, etc)"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TITLE, description = "Document title") })
+@WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class PutNuxeoDocuments extends AbstractNuxeoDynamicProcessor {
+
+    public static final PropertyDescriptor BULK_OPERATION = new PropertyDescriptor.Builder().name("BULK_OPERATION")
+                                                                                            .displayName(
+                                                                                                    "Bulk Operation")
+                                                                                            .description(
+                                                                                                    "Automation operation creating all the documents of a batch.")
+                                                                                            .defaultValue(
+                                                                                                    "javascript.CreateDocuments")
+                                                                                            .required(true)
+                                                                                            .addValidator(
+                                                                                                    StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                            .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor.Builder().name("BATCH_SIZE")
+                                                                                        .displayName("Batch Size")
+                                                                                        .description(
+                                                                                                "Maximum number of flowfiles created per server call.")
+                                                                                        .defaultValue("100")
+                                                                                        .required(true)
+                                                                                        .addValidator(
+                                                                                                StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+                                                                                        .build();
+
+    public static final PropertyDescriptor FALLBACK = new PropertyDescriptor.Builder().name("FALLBACK")
+                                                                                      .displayName(
+                                                                                              "Fallback to Single Creation")
+                                                                                      .description(
+                                                                                              "Create the documents one by one when the server rejects the bulk call or the operation fails, nothing being committed then. Timeouts and gateway errors route the batch to failure, the documents may already exist.")
+                                                                                      .allowableValues(YES, NO)
+                                                                                      .defaultValue("true")
+                                                                                      .required(true)
+                                                                                      .addValidator(
+                                                                                              StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                      .build();
+
+    protected String bulkOperation;
+
+    protected int batchSize = 100;
+
+    protected boolean fallback = true;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(NUXEO_CLIENT_SERVICE);
+        descriptors.add(TARGET_REPO);
+        descriptors.add(DOC_PATH);
+        descriptors.add(CreateNuxeoDocument.DOC_NAME);
+        descriptors.add(DOC_TYPE);
+        descriptors.add(DOC_TITLE);
+        descriptors.add(BULK_OPERATION);
+        descriptors.add(BATCH_SIZE);
+        descriptors.add(FALLBACK);
+        descriptors.add(PROPERTY_TYPES);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.bulkOperation = ctx.getProperty(BULK_OPERATION).getValue();
+        this.batchSize = ctx.getProperty(BATCH_SIZE).asInteger();
+        this.fallback = ctx.getProperty(FALLBACK).asBoolean();
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        List<FlowFile> flowFiles = session.get(this.batchSize);
+        if (flowFiles.isEmpty()) {
+            return;
+        }
+
+        // One bulk call per target repository
+        Map<String, List<FlowFile>> batches = new LinkedHashMap<>();
+        for (FlowFile flowFile : flowFiles) {
+            batches.computeIfAbsent(getRepositoryName(context, flowFile), k -> new ArrayList<>()).add(flowFile);
+        }
+        for (List<FlowFile> batch : batches.values()) {
+            createDocuments(context, session, batch);
+        }
+    }
+
+    protected void createDocuments(ProcessContext context, ProcessSession session, List<FlowFile> flowFiles) {
+        List<Map<String, Object>> entries = new ArrayList<>(flowFiles.size());
+        for (FlowFile flowFile : flowFiles) {
+            entries.add(toEntry(context, flowFile));
+        }
+
+        List<Document> created;
+        try {
+            String json = NuxeoJson.writer().writeValueAsString(entries);
+            Operation op = getOperation(context, flowFiles.get(0), this.bulkOperation);
+            Documents docs = op.param("documents", json).execute();
+            created = docs == null ? Collections.emptyList() : docs.getDocuments();
+        } catch (NuxeoClientException | JsonProcessingException e) {
+            // Only retry when nothing was committed, to avoid duplicates
+            if (!this.fallback || !isRejected(e)) {
+                getLogger().error("Unable to store documents", e);
+                for (FlowFile flowFile : flowFiles) {
+                    session.putAttribute(flowFile, VAR_ERROR, String.valueOf(e));
+                    session.transfer(flowFile, REL_FAILURE);
+                }
+                return;
+            }
+            getLogger().warn("Bulk creation rejected, creating documents one by one", e);
+            for (int i = 0; i < flowFiles.size(); i++) {
+                createDocument(context, session, flowFiles.get(i), entries.get(i));
+            }
+            return;
+        }
+
+        // Map results back by index
+        if (created.size() != flowFiles.size()) {
+            String error = "Bulk operation returned " + created.size() + " documents for " + flowFiles.size();
+            getLogger().error(error);
+            for (FlowFile flowFile : flowFiles) {
+                session.putAttribute(flowFile, VAR_ERROR, error);
+                session.transfer(flowFile, REL_FAILURE);
+            }
+            return;
+        }
+        for (int i = 0; i < flowFiles.size(); i++) {
+            transferDocument(session, flowFiles.get(i), created.get(i));
+        }
+    }
+
+    /**
+     * Whether the bulk call failed before any document could be committed: the request was never sent, the server
+     * rejected it, or the operation failed. Automation runs in a single transaction, so an operation error, like an
+     * invalid entry failing the script, is rolled back. Timeouts and gateway errors may happen after the commit.
+     */
+    protected boolean isRejected(Exception e) {
+        if (e instanceof JsonProcessingException) {
+            return true;
+        }
+        if (e instanceof NuxeoClientRemoteException) {
+            int status = ((NuxeoClientRemoteException) e).getStatus();
+            // 500 is an operation error, 408 and 5xx gateway statuses are timeouts
+            return status >= 400 && status < 500 && status != 408 || status == 500;
+        }
+        return false;
+    }
+
+    protected Map<String, Object> toEntry(ProcessContext context, FlowFile flowFile) {
+        String path = getArg(context, flowFile, VAR_PATH, DOC_PATH);
+        String name = getArg(context, flowFile, VAR_NAME, CreateNuxeoDocument.DOC_NAME);
+        String type = getArg(context, flowFile, VAR_TYPE, DOC_TYPE);
+        String title = getArg(context, flowFile, VAR_TITLE, DOC_TITLE);
+
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("dc:title", title != null ? title : name);
+        props.putAll(getDynamicValues(context, flowFile));
+
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("parent", path);
+        entry.put("name", name);
+        entry.put("type", type);
+        entry.put("properties", props);
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void createDocument(ProcessContext context, ProcessSession session, FlowFile flowFile,
+            Map<String, Object> entry) {
+        try {
+            Document doc = Document.createWithName((String) entry.get("name"), (String) entry.get("type"));
+            ((Map<String, Object>) entry.get("properties")).forEach(doc::setPropertyValue);
+            doc = getRepository(context, flowFile).createDocumentByPath((String) entry.get("parent"), doc);
+            transferDocument(session, flowFile, doc);
+        } catch (NuxeoClientException nce) {
+            getLogger().error("Unable to store document", nce);
+            session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
+            session.transfer(flowFile, REL_FAILURE);
+        }
+    }
+
+}
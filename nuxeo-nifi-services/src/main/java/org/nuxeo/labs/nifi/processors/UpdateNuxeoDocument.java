@@ -21,9 +21,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
@@ -40,37 +43,94 @@ import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
 import org.nuxeo.client.objects.Document;
 import org.nuxeo.client.objects.EntityTypes;
 import org.nuxeo.client.spi.NuxeoClientException;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
 @Tags({ "nuxeo", "put", "document" })
-@CapabilityDescription("Update a Nuxeo Document in the repository.")
+@CapabilityDescription("Update a Nuxeo Document in the repository. In delta mode, only the dynamic properties are sent "
+        + "to the document identified by nx-docid, without reading or fetching the document. Updates that would not "
+        + "change the document JSON carried by the flowfile can be routed to 'unchanged' without any server call. With "
+        + "a change token, the update is conditional and stale documents are routed to 'conflict'.")
 @SeeAlso({ CreateNuxeoDocument.class, GetNuxeoDocument.class })
 @ReadsAttributes({
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type, must be: "
                 + EntityTypes.DOCUMENT),
         @ReadsAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID to use if the path isn't specified"),
-        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Path to use, nx-docid overrides") })
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Path to use, nx-docid overrides"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_CHANGE_TOKEN, description = "Expected document change token") })
 @WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID"),
         @WritesAttribute(attribute = NuxeoAttributes.VAR_ENTITY_TYPE, description = "Document entity type") })
 @InputRequirement(Requirement.INPUT_REQUIRED)
 public class UpdateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
 
+    public static final PropertyDescriptor DELTA_UPDATE = new PropertyDescriptor.Builder().name("DELTA_UPDATE")
+                                                                                          .displayName(
+                                                                                                  "Delta Update")
+                                                                                          .description(
+                                                                                                  "Only send the updated properties, by document ID.")
+                                                                                          .allowableValues(YES, NO)
+                                                                                          .defaultValue("false")
+                                                                                          .required(true)
+                                                                                          .addValidator(
+                                                                                                  StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                          .build();
+
+    public static final PropertyDescriptor SKIP_UNCHANGED = new PropertyDescriptor.Builder().name("SKIP_UNCHANGED")
+                                                                                            .displayName(
+                                                                                                    "Skip Unchanged")
+                                                                                            .description(
+                                                                                                    "Compare the new values with the flowfile document and skip the update if nothing changed.")
+                                                                                            .allowableValues(YES, NO)
+                                                                                            .defaultValue("false")
+                                                                                            .required(true)
+                                                                                            .addValidator(
+                                                                                                    StandardValidators.BOOLEAN_VALIDATOR)
+                                                                                            .build();
+
+    public static final Relationship REL_UNCHANGED = new Relationship.Builder().name("unchanged")
+                                                                               .description(
+                                                                                       "Document already up to date")
+                                                                               .build();
+
+    protected boolean deltaUpdate = false;
+
+    protected boolean skipUnchanged = false;
+
+    protected boolean checkChangeToken = false;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
         descriptors.add(NUXEO_CLIENT_SERVICE);
         descriptors.add(TARGET_REPO);
         descriptors.add(DOC_PATH);
+        descriptors.add(DELTA_UPDATE);
+        descriptors.add(SKIP_UNCHANGED);
+        descriptors.add(CHECK_CHANGE_TOKEN);
+        descriptors.add(PROPERTY_TYPES);
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
         relationships.add(REL_SUCCESS);
         relationships.add(REL_FAILURE);
+        relationships.add(REL_UNCHANGED);
+        relationships.add(REL_CONFLICT);
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.deltaUpdate = ctx.getProperty(DELTA_UPDATE).asBoolean();
+        this.skipUnchanged = ctx.getProperty(SKIP_UNCHANGED).asBoolean();
+        this.checkChangeToken = ctx.getProperty(CHECK_CHANGE_TOKEN).asBoolean();
+    }
+
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
         FlowFile flowFile = session.get();
@@ -80,49 +140,101 @@ public class UpdateNuxeoDocument extends AbstractNuxeoDynamicProcessor {
 
         try {
             Document doc = null;
+            Map<String, Object> values = getValues(context, flowFile);
 
-            // Try to load from existing context
+            // Try to load from existing context, unless only the changes are sent
             String entityType = flowFile.getAttribute(VAR_ENTITY_TYPE);
-            if (EntityTypes.DOCUMENT.equals(entityType)) {
-                try (InputStream in = session.read(flowFile)) {
-                    String json = IOUtils.toString(in, UTF8);
-                    doc = nxClient().getConverterFactory().readJSON(json, Document.class);
-                    doc.reconnectWith(nxClient());
-                } catch (Exception iox) {
-                    getLogger().warn("Unable to load document from existing resource", iox);
-                }
+            String changeToken = this.checkChangeToken ? getArg(context, flowFile, VAR_CHANGE_TOKEN, null) : null;
+            boolean needBody = !this.deltaUpdate || this.skipUnchanged || (this.checkChangeToken && changeToken == null);
+            if (EntityTypes.DOCUMENT.equals(entityType) && needBody) {
+                doc = readDocument(session, flowFile);
+            }
+
+            // Nothing to write?
+            if (this.skipUnchanged && doc != null && isUnchanged(doc, values)) {
+                session.adjustCounter("Unchanged documents", 1, false);
+                session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+                session.transfer(flowFile, REL_UNCHANGED);
+                return;
+            }
+
+            // Conditional update
+            if (this.checkChangeToken && changeToken == null && doc != null) {
+                changeToken = doc.getChangeToken();
+            }
+            if (this.checkChangeToken && StringUtils.isBlank(changeToken)) {
+                throw new NuxeoClientException("No change token");
             }
 
-            // Load from server
-            if (doc == null) {
+            boolean reference = this.deltaUpdate || this.checkChangeToken;
+            if (reference) {
+                doc = getReference(context, flowFile, doc, changeToken);
+            } else if (doc == null) {
+                // Load from server
                 doc = getDocument(context, flowFile);
             }
 
             // Set the new properties
-            if (this.dynamicProperties != null) {
-                for (PropertyDescriptor desc : this.dynamicProperties) {
-                    String key = desc.getName();
-                    String value = getArg(context, flowFile, null, desc);
-                    Object json = isMaybeJSON(value);
-                    if (json != null) {
-                        doc.setPropertyValue(key, json);
-                    } else {
-                        doc.setPropertyValue(key, value);
-                    }
-                }
-            }
+            values.forEach(doc::setPropertyValue);
 
             // Update the document
-            doc = doc.updateDocument();
+            doc = reference ? getRepository(context, flowFile).updateDocument(doc) : doc.updateDocument();
 
-            session.putAttribute(flowFile, VAR_ENTITY_TYPE, doc.getEntityType());
-            session.putAttribute(flowFile, VAR_DOC_ID, doc.getId());
+            session.adjustCounter("Updated documents", 1, false);
+            flowFile = putDocumentAttributes(session, flowFile, doc.getEntityType(), doc.getId());
             session.transfer(flowFile, REL_SUCCESS);
         } catch (NuxeoClientException nce) {
+            if (isConflict(nce)) {
+                getLogger().warn("Document changed since change token", nce);
+                session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
+                session.transfer(flowFile, REL_CONFLICT);
+                return;
+            }
             getLogger().error("Unable to store document", nce);
             session.putAttribute(flowFile, VAR_ERROR, String.valueOf(nce));
             session.transfer(flowFile, REL_FAILURE);
         }
     }
 
+    /**
+     * Evaluate the dynamic properties, JSON values are parsed. Properties evaluating to nothing are skipped, so they
+     * are left unchanged rather than cleared.
+     */
+    protected Map<String, Object> getValues(ProcessContext context, FlowFile flowFile) {
+        return getDynamicValues(context, flowFile);
+    }
+
+    protected Document readDocument(ProcessSession session, FlowFile flowFile) {
+        try (InputStream in = session.read(flowFile)) {
+            String json = IOUtils.toString(in, UTF8);
+            Document doc = nxClient().getConverterFactory().readJSON(json, Document.class);
+            doc.reconnectWith(nxClient());
+            return doc;
+        } catch (Exception iox) {
+            getLogger().warn("Unable to load document from existing resource", iox);
+            return null;
+        }
+    }
+
+    /**
+     * Compare the new values with the current ones, both as JSON trees.
+     */
+    protected boolean isUnchanged(Document doc, Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            JsonNode next = value instanceof JsonNode ? (JsonNode) value
+                    : value == null ? null : TextNode.valueOf((String) value);
+            Object current = doc.getPropertyValue(entry.getKey());
+            JsonNode previous = current == null ? null : objectMapper().valueToTree(current);
+            if (!Objects.equals(normalize(next), normalize(previous))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode normalize(JsonNode node) {
+        return node == null || node.isNull() ? null : node;
+    }
+
 }
@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.nifi.annotation.behavior.InputRequirement;
@@ -157,12 +159,13 @@ public class UploadNuxeoBlob extends AbstractNuxeoProcessor {
                 session.transfer(blobFile, REL_FAILURE);
                 return;
             }
+            Map<String, String> attrs = new HashMap<>(4);
             if (filename != null) {
-                session.putAttribute(blobFile, VAR_FILENAME, filename);
+                attrs.put(VAR_FILENAME, filename);
             }
-
-            session.putAttribute(blobFile, VAR_BATCH, batch.getBatchId());
-            session.putAttribute(blobFile, VAR_INDEX, index);
+            attrs.put(VAR_BATCH, batch.getBatchId());
+            attrs.put(VAR_INDEX, index);
+            blobFile = session.putAllAttributes(blobFile, attrs);
             session.transfer(blobFile, REL_SUCCESS);
         } catch (NuxeoClientException nce) {
             getLogger().error("Unable to upload blob", nce);
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.ReadsAttribute;
+import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.nuxeo.client.objects.Operation;
+import org.nuxeo.client.objects.blob.Blob;
+import org.nuxeo.client.spi.NuxeoClientException;
+import org.nuxeo.client.util.NuxeoJson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+@Tags({ "nuxeo", "put", "upsert", "document" })
+@CapabilityDescription("Create or update a Nuxeo Document by parent path and name in a single server call. The upsert "
+        + "operation receives the parent, name, type and properties (JSON) parameters and must return a JSON "
+        + "{uid, action} result, action being 'created' or 'updated'.")
+@SeeAlso({ CreateNuxeoDocument.class, UpdateNuxeoDocument.class })
+@ReadsAttributes({ @ReadsAttribute(attribute = NuxeoAttributes.VAR_NAME, description = "Document name"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_PATH, description = "Parent document path"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TYPE, description = "Document type (File, Picture, etc)"),
+        @ReadsAttribute(attribute = NuxeoAttributes.VAR_TITLE, description = "Document title") })
+@WritesAttributes({ @WritesAttribute(attribute = NuxeoAttributes.VAR_DOC_ID, description = "Document ID"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_UPSERT_ACTION, description = "created or updated"),
+        @WritesAttribute(attribute = NuxeoAttributes.VAR_ERROR, description = "Error set if problem occurs") })
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class UpsertNuxeoDocument extends AbstractNuxeoDynamicProcessor {
+
+    public static final PropertyDescriptor UPSERT_OPERATION = new PropertyDescriptor.Builder().name(
+            "UPSERT_OPERATION")
+                                                                                              .displayName(
+                                                                                                      "Upsert Operation")
+                                                                                              .description(
+                                                                                                      "Automation operation creating or updating the document.")
+                                                                                              .defaultValue(
+                                                                                                      "javascript.UpsertDocument")
+                                                                                              .required(true)
+                                                                                              .addValidator(
+                                                                                                      StandardValidators.NON_BLANK_VALIDATOR)
+                                                                                              .build();
+
+    protected String upsertOperation;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(NUXEO_CLIENT_SERVICE);
+        descriptors.add(TARGET_REPO);
+        descriptors.add(DOC_PATH);
+        descriptors.add(CreateNuxeoDocument.DOC_NAME);
+        descriptors.add(DOC_TYPE);
+        descriptors.add(DOC_TITLE);
+        descriptors.add(UPSERT_OPERATION);
+        descriptors.add(PROPERTY_TYPES);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(REL_SUCCESS);
+        relationships.add(REL_FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    protected void processorScheduled(ProcessContext ctx) {
+        super.processorScheduled(ctx);
+        this.upsertOperation = ctx.getProperty(UPSERT_OPERATION).getValue();
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        // Evaluate target path
+        String path = getArg(context, flowFile, VAR_PATH, DOC_PATH);
+        String name = getArg(context, flowFile, VAR_NAME, CreateNuxeoDocument.DOC_NAME);
+        String type = getArg(context, flowFile, VAR_TYPE, DOC_TYPE);
+        String title = getArg(context, flowFile, VAR_TITLE, DOC_TITLE);
+
+        Map<String, Object> props = new LinkedHashMap<>();
+        if (title != null) {
+            props.put("dc:title", title);
+        }
+        props.putAll(getDynamicValues(context, flowFile));
+
+        try {
+            Operation op = getOperation(context, flowFile, this.upsertOperation);
+            Object result = op.param("parent", path)
+                              .param("name", name)
+                              .param("type", type)
+                              .param("properties", NuxeoJson.writer().writeValueAsString(props))
+                              .execute();
+            JsonNode json = readResult(result);
+
+            Map<String, String> attrs = new LinkedHashMap<>();
+            attrs.put(VAR_DOC_ID, json.path("uid").asText());
+            attrs.put(VAR_UPSERT_ACTION, json.path("action").asText());
+            flowFile = session.putAllAttributes(flowFile, attrs);
+            session.transfer(flowFile, REL_SUCCESS);
+        } catch (NuxeoClientException | IOException e) {
+            getLogger().error("Unable to upsert document", e);
+            session.putAttribute(flowFile, VAR_ERROR, String.valueOf(e));
+            session.transfer(flowFile, REL_FAILURE);
+        }
+    }
+
+    protected JsonNode readResult(Object result) throws IOException {
+        String json;
+        if (result instanceof Blob) {
+            try (InputStream in = ((Blob) result).getStream()) {
+                json = IOUtils.toString(in, UTF8);
+            }
+        } else if (result != null) {
+            json = result.toString();
+        } else {
+            throw new IOException("No response from operation: " + this.upsertOperation);
+        }
+        JsonNode node = NuxeoJson.treeReader().readTree(json);
+        if (!node.hasNonNull("uid") || !node.hasNonNull("action")) {
+            throw new IOException("Unexpected upsert result: " + json);
+        }
+        return node;
+    }
+
+}
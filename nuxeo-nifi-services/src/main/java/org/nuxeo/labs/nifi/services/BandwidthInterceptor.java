@@ -0,0 +1,138 @@
+package org.nuxeo.labs.nifi.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Shape the bandwidth of binary transfers with one {@link TokenBucket} per direction.
+ * <p>
+ * Two priority classes: JSON metadata bodies are never delayed but are charged to the buckets, binary bodies (blob
+ * uploads and downloads, multipart operation inputs) wait for tokens as they are streamed.
+ */
+public class BandwidthInterceptor implements Interceptor {
+
+    private final TokenBucket upload;
+
+    private final TokenBucket download;
+
+    /**
+     * @param upload upload limiter, null for unlimited
+     * @param download download limiter, null for unlimited
+     */
+    public BandwidthInterceptor(TokenBucket upload, TokenBucket download) {
+        super();
+        this.upload = upload;
+        this.download = download;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        if (this.upload != null && body != null) {
+            if (isBulk(body.contentType())) {
+                request = request.newBuilder().method(request.method(), new ThrottledRequestBody(body)).build();
+            } else if (body.contentLength() > 0) {
+                this.upload.consume(body.contentLength());
+            }
+        }
+
+        Response response = chain.proceed(request);
+        ResponseBody content = response.body();
+        if (this.download == null || content == null) {
+            return response;
+        }
+        if (!isBulk(content.contentType())) {
+            if (content.contentLength() > 0) {
+                this.download.consume(content.contentLength());
+            }
+            return response;
+        }
+        ThrottledSource source = new ThrottledSource(content);
+        return response.newBuilder()
+                       .body(ResponseBody.create(content.contentType(), content.contentLength(),
+                               Okio.buffer(source)))
+                       .build();
+    }
+
+    protected boolean isBulk(MediaType type) {
+        if (type == null) {
+            return true;
+        }
+        String subtype = type.subtype();
+        return !("json".equals(subtype) || subtype.endsWith("+json"));
+    }
+
+    protected static void acquire(TokenBucket bucket, long bytes) throws InterruptedIOException {
+        try {
+            bucket.acquire(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttling");
+        }
+    }
+
+    protected class ThrottledRequestBody extends RequestBody {
+
+        private final RequestBody delegate;
+
+        protected ThrottledRequestBody(RequestBody delegate) {
+            super();
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return this.delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return this.delegate.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            BufferedSink throttled = Okio.buffer(new ForwardingSink(sink) {
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    acquire(upload, byteCount);
+                    super.write(source, byteCount);
+                }
+            });
+            this.delegate.writeTo(throttled);
+            throttled.emit();
+        }
+
+    }
+
+    protected class ThrottledSource extends ForwardingSource {
+
+        protected ThrottledSource(ResponseBody body) {
+            super(body.source());
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                acquire(download, read);
+            }
+            return read;
+        }
+
+    }
+
+}
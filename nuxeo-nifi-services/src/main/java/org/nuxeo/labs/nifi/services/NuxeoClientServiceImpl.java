@@ -13,6 +13,7 @@ import org.apache.nifi.components.Validator;
 import org.apache.nifi.controller.AbstractControllerService;
 import org.apache.nifi.controller.ConfigurationContext;
 import org.apache.nifi.expression.ExpressionLanguageScope;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.util.StandardValidators;
 import org.apache.nifi.reporting.InitializationException;
 import org.nuxeo.client.NuxeoClient;
@@ -22,9 +23,11 @@ import org.nuxeo.client.spi.auth.TokenAuthInterceptor;
 import org.nuxeo.labs.nifi.NuxeoClientService;
 
 import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 
 @Tags({ "nuxeo", "configuration" })
-@CapabilityDescription("Provides a controller service to manage Nuxeo server connections.")
+@CapabilityDescription("Provides a controller service to manage Nuxeo server connections. Binary transfers can be "
+        + "rate limited, JSON metadata calls are never delayed.")
 public class NuxeoClientServiceImpl extends AbstractControllerService implements NuxeoClientService {
 
     static final String BASIC = "Basic";
@@ -98,6 +101,26 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
                                                                                                  StandardValidators.NON_BLANK_VALIDATOR)
                                                                                          .build();
 
+    public static final PropertyDescriptor UPLOAD_RATE = new PropertyDescriptor.Builder().name("UPLOAD_RATE")
+                                                                                         .displayName(
+                                                                                                 "Upload Rate")
+                                                                                         .description(
+                                                                                                 "Maximum binary upload bandwidth per second, shared by all processors using this service.")
+                                                                                         .required(false)
+                                                                                         .addValidator(
+                                                                                                 StandardValidators.DATA_SIZE_VALIDATOR)
+                                                                                         .build();
+
+    public static final PropertyDescriptor DOWNLOAD_RATE = new PropertyDescriptor.Builder().name("DOWNLOAD_RATE")
+                                                                                           .displayName(
+                                                                                                   "Download Rate")
+                                                                                           .description(
+                                                                                                   "Maximum binary download bandwidth per second, shared by all processors using this service.")
+                                                                                           .required(false)
+                                                                                           .addValidator(
+                                                                                                   StandardValidators.DATA_SIZE_VALIDATOR)
+                                                                                           .build();
+
     private static final List<PropertyDescriptor> serviceProperties;
 
     static {
@@ -107,6 +130,8 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
         props.add(AUTH_TYPE);
         props.add(USERNAME);
         props.add(CREDENTIALS);
+        props.add(UPLOAD_RATE);
+        props.add(DOWNLOAD_RATE);
         serviceProperties = Collections.unmodifiableList(props);
     }
 
@@ -120,6 +145,10 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
 
     private String credentials;
 
+    private OkHttpClient httpClient;
+
+    private BandwidthInterceptor bandwidth;
+
     @Override
     protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
         return serviceProperties;
@@ -142,15 +171,35 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
             getLogger().warn("Server URL does not end with '/nuxeo': " + serverUrl);
         }
 
+        // Bandwidth, shared by all clients of this service
+        TokenBucket upload = getBucket(context, UPLOAD_RATE);
+        TokenBucket download = getBucket(context, DOWNLOAD_RATE);
+        bandwidth = upload == null && download == null ? null : new BandwidthInterceptor(upload, download);
+
         try {
             // Test client build
             doBuild();
         } catch (Exception ex) {
             throw new InitializationException(ex);
         }
+
+        // Shared raw HTTP client, connection pool is reused by all processors
+        OkHttpClient.Builder builder = new OkHttpClient.Builder().addInterceptor(doAuthentication());
+        if (bandwidth != null) {
+            builder.addInterceptor(bandwidth);
+        }
+        httpClient = builder.build();
     }
 
-    protected NuxeoClient doBuild() {
+    protected TokenBucket getBucket(final ConfigurationContext context, PropertyDescriptor desc) {
+        if (!context.getProperty(desc).isSet()) {
+            return null;
+        }
+        long rate = context.getProperty(desc).asDataSize(DataUnit.B).longValue();
+        return rate > 0 ? new TokenBucket(rate) : null;
+    }
+
+    protected Interceptor doAuthentication() {
         Interceptor auth = null;
         switch (authType) {
         case TOKEN:
@@ -163,15 +212,24 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
         default:
             auth = new BasicAuthInterceptor(username, credentials);
         }
+        return auth;
+    }
+
+    protected NuxeoClient doBuild() {
+        Interceptor auth = doAuthentication();
 
         // Build it
-        NuxeoClient client = new NuxeoClient.Builder()
-                                                      // Set URL
-                                                      .url(serverUrl)
-                                                      // Authenticate
-                                                      .authentication(auth)
-                                                      // Connect
-                                                      .build();
+        NuxeoClient.Builder builder = new NuxeoClient.Builder()
+                                                               // Set URL
+                                                               .url(serverUrl)
+                                                               // Authenticate
+                                                               .authentication(auth);
+        if (bandwidth != null) {
+            // Throttle binary transfers
+            builder.interceptor(bandwidth);
+        }
+        // Connect
+        NuxeoClient client = builder.build();
         // Ship it
         return client;
     }
@@ -187,4 +245,15 @@ public class NuxeoClientServiceImpl extends AbstractControllerService implements
         return this.defaultRepo;
     }
 
+    public String getServerUrl() {
+        return serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+    }
+
+    public OkHttpClient getHttpClient() {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Nuxeo Client Service is disabled");
+        }
+        return this.httpClient;
+    }
+
 }
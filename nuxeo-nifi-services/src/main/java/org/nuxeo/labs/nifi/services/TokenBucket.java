@@ -0,0 +1,112 @@
+package org.nuxeo.labs.nifi.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter, one token per byte.
+ * <p>
+ * Bulk transfers {@link #acquire(long)} and wait for tokens, while priority traffic {@link #consume(long)} them
+ * without waiting, possibly into debt, which delays the next bulk transfers instead.
+ */
+public class TokenBucket {
+
+    private final long rate;
+
+    private final long capacity;
+
+    /** Monotonic time source, in nanoseconds */
+    private final LongSupplier ticker;
+
+    private double tokens;
+
+    private long last;
+
+    /**
+     * @param rate bytes per second, also used as burst capacity
+     */
+    public TokenBucket(long rate) {
+        this(rate, rate);
+    }
+
+    /**
+     * @param rate bytes per second
+     * @param capacity maximum burst in bytes
+     */
+    public TokenBucket(long rate, long capacity) {
+        this(rate, capacity, System::nanoTime);
+    }
+
+    /**
+     * @param rate bytes per second
+     * @param capacity maximum burst in bytes
+     * @param ticker the time source, in nanoseconds
+     */
+    TokenBucket(long rate, long capacity, LongSupplier ticker) {
+        super();
+        if (rate < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.ticker = ticker;
+        this.tokens = capacity;
+        this.last = ticker.getAsLong();
+    }
+
+    public long getRate() {
+        return this.rate;
+    }
+
+    /**
+     * Wait until the given number of bytes can be transferred.
+     *
+     * @param bytes number of bytes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long chunk = Math.min(remaining, this.capacity);
+            long wait = tryAcquire(chunk);
+            if (wait == 0) {
+                remaining -= chunk;
+            } else {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * Take the tokens if available.
+     *
+     * @param bytes number of bytes, at most the capacity
+     * @return 0 if the tokens were taken, else the nanoseconds to wait until they are available
+     */
+    synchronized long tryAcquire(long bytes) {
+        refill();
+        if (this.tokens >= bytes) {
+            this.tokens -= bytes;
+            return 0;
+        }
+        return Math.max((long) ((bytes - this.tokens) * TimeUnit.SECONDS.toNanos(1) / this.rate), 1);
+    }
+
+    /**
+     * Account for bytes transferred without waiting.
+     *
+     * @param bytes number of bytes
+     */
+    public synchronized void consume(long bytes) {
+        refill();
+        this.tokens -= bytes;
+    }
+
+    private void refill() {
+        long now = this.ticker.getAsLong();
+        this.tokens = Math.min(this.capacity,
+                this.tokens + (double) (now - this.last) * this.rate / TimeUnit.SECONDS.toNanos(1));
+        this.last = now;
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.nuxeo.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DigestCopyTest {
+
+    @Test
+    public void testCopy() throws IOException {
+        byte[] data = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String hash = DigestCopy.copy(new ByteArrayInputStream(data), out,
+                DigestCopy.getInstance(DigestCopy.DEFAULT_ALGORITHM));
+        Assert.assertEquals("9e107d9d372bb6826bd81d3542a419d6", hash);
+        Assert.assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testLeadingZeros() throws IOException {
+        // MD5 starts with a 0x00 byte
+        byte[] data = "test131".getBytes(StandardCharsets.UTF_8);
+        String hash = DigestCopy.copy(new ByteArrayInputStream(data), new ByteArrayOutputStream(),
+                DigestCopy.getInstance(DigestCopy.DEFAULT_ALGORITHM));
+        Assert.assertEquals("0020b05bc1f5af852530af0c7682ffbf", hash);
+        Assert.assertEquals(32, hash.length());
+
+        // First byte below 0x10
+        Assert.assertEquals("0c01", DigestCopy.toHex(new byte[] { 0x0c, 0x01 }));
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        Assert.assertNull(DigestCopy.getInstance("NOPE"));
+        Assert.assertNull(DigestCopy.getInstance(null));
+    }
+
+}
@@ -0,0 +1,146 @@
+package org.nuxeo.client.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.Pointer;
+import org.nuxeo.client.objects.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the compiled {@link PathExpression} navigation with the original per call JXPath evaluation.
+ * <p>
+ * Run with <code>main</code> from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentPathBenchmark {
+
+    @Param({ "file:content/name", "files:files/1/file/digest", "dc:subjects/-1", "files:files/[length>1000]" })
+    public String xpath;
+
+    private Document doc;
+
+    private PathExpression compiled;
+
+    @Setup
+    public void setup() {
+        this.doc = Document.createWithName("bench", "File");
+        Map<String, Object> properties = new HashMap<>();
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("name", "bench.pdf");
+        content.put("digest", "0123456789abcdef");
+        properties.put("file:content", content);
+        properties.put("dc:subjects", Arrays.asList("art", "music", "sport"));
+
+        Object[] files = new Object[5];
+        for (int i = 0; i < files.length; i++) {
+            Map<String, Object> file = new HashMap<>();
+            file.put("digest", "digest-" + i);
+            file.put("length", i * 1000);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("file", file);
+            files[i] = entry;
+        }
+        properties.put("files:files", files);
+        this.doc.setProperties(properties);
+
+        this.compiled = PathExpression.compile(this.xpath);
+    }
+
+    @Benchmark
+    public Object jxpath() {
+        return legacyEvaluate(this.doc, this.xpath);
+    }
+
+    @Benchmark
+    public Object cached() {
+        return PathExpression.of(this.xpath).evaluate(this.doc);
+    }
+
+    @Benchmark
+    public Object compiled() {
+        return this.compiled.evaluate(this.doc);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DocumentPathBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    /**
+     * The evaluation before expressions were compiled: tokenized and resolved through JXPath on each call.
+     */
+    private static Object legacyEvaluate(Document doc, String xpath) {
+        Object ref = doc;
+        try (Scanner scan = new Scanner(xpath)) {
+            scan.useDelimiter("/");
+            while (ref != null && scan.hasNext()) {
+                String part = scan.next();
+                if (part.matches("[a-zA-Z_:][\\w\\-:]*:[a-zA-Z_:][\\w\\-:]*")) {
+                    ref = doc.getPropertyValue(part);
+                } else {
+                    ref = legacyResolve(ref, part);
+                }
+            }
+        }
+        return ref;
+    }
+
+    private static Object legacyResolve(Object ref, String part) {
+        if (ref instanceof Object[] || ref instanceof List) {
+            int len = ref instanceof List ? ((List<?>) ref).size() : ((Object[]) ref).length;
+            try {
+                int idx = Integer.parseInt(part);
+                part = "$root[" + (idx < 0 ? len + idx : idx) + "]";
+            } catch (NumberFormatException nfe) {
+                part = "$root" + part;
+            }
+        }
+
+        JXPathContext jx = JXPathContext.newContext(ref);
+        jx.getVariables().declareVariable("root", ref);
+
+        @SuppressWarnings("unchecked")
+        Iterator<Pointer> ptr = jx.iteratePointers(part);
+        List<Object> list = null;
+        Object val = null;
+        while (ptr.hasNext()) {
+            Pointer p = ptr.next();
+            if (val != null && list == null) {
+                list = new LinkedList<>();
+                list.add(val);
+            }
+            val = p.getValue();
+            if (list != null) {
+                list.add(val);
+            }
+        }
+        return list != null ? list : val;
+    }
+
+}
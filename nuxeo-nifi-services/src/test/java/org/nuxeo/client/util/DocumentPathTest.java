@@ -1,5 +1,6 @@
 package org.nuxeo.client.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -35,6 +36,12 @@ public class DocumentPathTest {
                 new MockFile("d", "application/octet-stream", "jkl", 101112),
                 new MockFile("e", "video/mp4", "mno", 131415) };
         properties.put("files:files", this.files);
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("name", "test.txt");
+        content.put("digest", "abc");
+        properties.put("file:content", content);
+        properties.put("dc:subjects", Arrays.asList("art", "music", "sport"));
         this.doc.setProperties(properties);
     }
 
@@ -79,6 +86,18 @@ public class DocumentPathTest {
         test("sample:array/4/2", "four");
     }
 
+    @Test
+    public void testDirectPath() {
+        test("file:content/name", "test.txt");
+        test("file:content/missing", null);
+        test("dc:subjects/1", "art");
+        test("dc:subjects/3", "sport");
+        test("dc:subjects/-1", "music");
+        test("dc:subjects/0", null);
+        test("sample:array/-1", Pair.of("three", 3));
+        test("files:files/2/name", "b");
+    }
+
     @Test
     public void testFilters() {
         test("files:files", this.files);
@@ -88,6 +107,15 @@ public class DocumentPathTest {
         test("files:files/[length>1000]", expected);
     }
 
+    @Test
+    public void testCompiledPath() {
+        PathExpression expr = PathExpression.compile("sample:array/3/key");
+        Assert.assertEquals("three", expr.evaluate(this.doc));
+        Assert.assertEquals("three", new DocumentPath(this.doc).evaluate(expr));
+        Assert.assertNull(PathExpression.compile(" ").evaluate(this.doc));
+        Assert.assertSame(PathExpression.of("sample:string"), PathExpression.of("sample:string"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testInvalidPaths() {
         test("properties/sample:int/test:int", 42);
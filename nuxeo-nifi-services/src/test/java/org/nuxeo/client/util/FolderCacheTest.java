@@ -0,0 +1,95 @@
+package org.nuxeo.client.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nuxeo.client.util.FolderCache.FolderResolver;
+
+public class FolderCacheTest {
+
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    private final FolderResolver resolver = (parentId, path, name) -> {
+        this.calls.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+        if (parentId == null) {
+            Assert.assertEquals("/", path);
+        } else {
+            Assert.assertTrue(path.startsWith(parentId.equals("/") ? "/" : parentId + "/"));
+        }
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Use the path as identifier
+        return path;
+    };
+
+    @Test
+    public void testEnsure() {
+        FolderCache cache = new FolderCache(100);
+        Assert.assertEquals("/ws/2026/10", cache.ensure(null, "ws/2026/10/", this.resolver));
+        Assert.assertEquals("/ws/2026/11", cache.ensure(null, "/ws/2026/11", this.resolver));
+        Assert.assertEquals(1, this.calls.get("/").get());
+        Assert.assertEquals(1, this.calls.get("/ws").get());
+        Assert.assertEquals(1, this.calls.get("/ws/2026").get());
+        Assert.assertEquals(5, cache.size());
+    }
+
+    @Test
+    public void testConcurrentEnsure() throws Exception {
+        FolderCache cache = new FolderCache(1000);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String path = "/ws/2026/" + (i % 4) + "/" + (i % 8);
+                futures.add(executor.submit(() -> cache.ensure(null, path, this.resolver)));
+            }
+            for (Future<String> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        this.calls.forEach((path, count) -> Assert.assertEquals(path, 1, count.get()));
+        Assert.assertEquals(3 + 4 + 8, this.calls.size());
+    }
+
+    @Test
+    public void testFailureIsNotCached() {
+        FolderCache cache = new FolderCache(100);
+        try {
+            cache.ensure(null, "/a/b", (parentId, path, name) -> {
+                throw new IllegalStateException("boom");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("boom", e.getMessage());
+        }
+        Assert.assertEquals("/a/b", cache.ensure(null, "/a/b", this.resolver));
+    }
+
+    @Test
+    public void testBoundedAndScoped() {
+        FolderCache cache = new FolderCache(3);
+        cache.ensure("default", "/a/b/c", this.resolver);
+        Assert.assertEquals(3, cache.size());
+        cache.ensure("other", "/a", this.resolver);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(2, this.calls.get("/a").get());
+
+        cache.invalidate("other", "/a");
+        cache.ensure("other", "/a", this.resolver);
+        Assert.assertEquals(3, this.calls.get("/a").get());
+    }
+
+}
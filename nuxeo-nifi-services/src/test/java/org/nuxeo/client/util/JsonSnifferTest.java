@@ -0,0 +1,52 @@
+package org.nuxeo.client.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonSnifferTest {
+
+    @Test
+    public void testContainers() {
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("{\"a\": 1}"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("  [1, 2]\n"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("{}"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("{not closed"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("[1, 2}"));
+    }
+
+    @Test
+    public void testScalars() {
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("\"quoted\""));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("true"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("false"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON(" null "));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("\""));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("trueish"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("nul"));
+    }
+
+    @Test
+    public void testNumbers() {
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("0"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("-42"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("3.14"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("1e10"));
+        Assert.assertTrue(JsonSniffer.isMaybeJSON("-2.5E-3"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("007"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("1."));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("1e"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("-"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("12abc"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("2020-05-17"));
+    }
+
+    @Test
+    public void testPlainStrings() {
+        Assert.assertFalse(JsonSniffer.isMaybeJSON(null));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON(""));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("   "));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("My Document"));
+        Assert.assertFalse(JsonSniffer.isMaybeJSON("/default-domain/workspaces"));
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.nuxeo.client.util;
+
+import java.time.LocalDate;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class NuxeoJsonTest {
+
+    public static class Entry {
+        public String name;
+    }
+
+    @Test
+    public void testShared() {
+        Assert.assertSame(NuxeoJson.mapper(), NuxeoJson.mapper());
+        Assert.assertSame(NuxeoJson.treeReader(), NuxeoJson.treeReader());
+        Assert.assertSame(NuxeoJson.writer(), NuxeoJson.writer());
+    }
+
+    @Test
+    public void testDates() throws Exception {
+        String json = NuxeoJson.writer()
+                               .writeValueAsString(Collections.singletonMap("date", LocalDate.of(2020, 5, 17)));
+        Assert.assertEquals("{\"date\":\"2020-05-17\"}", json);
+    }
+
+    @Test
+    public void testUnknownProperties() throws Exception {
+        Entry entry = NuxeoJson.readerFor(Entry.class).readValue("{\"name\":\"test\",\"other\":1}");
+        Assert.assertEquals("test", entry.name);
+    }
+
+    @Test
+    public void testTree() throws Exception {
+        JsonNode node = NuxeoJson.treeReader().readTree("[1,2]");
+        Assert.assertTrue(node.isArray());
+        Assert.assertEquals(2, node.size());
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.nuxeo.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.client.objects.Document;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PathTrieTest {
+
+    private Document doc;
+
+    @Before
+    public void createDocument() {
+        this.doc = Document.createWithName("test.doc", "File");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("dc:title", "Test");
+        properties.put("dc:subjects", Arrays.asList("art", "music"));
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("name", "test.txt");
+        content.put("length", 42);
+        properties.put("file:content", content);
+        this.doc.setProperties(properties);
+    }
+
+    private PathTrie trie(String... xpaths) {
+        List<PathExpression> exprs = Arrays.stream(xpaths).map(PathExpression::compile).collect(Collectors.toList());
+        return new PathTrie(exprs);
+    }
+
+    @Test
+    public void testSharedPrefixes() {
+        String[] xpaths = { "file:content/name", "file:content/length", "file:content", "properties/dc:title",
+                "dc:title", "dc:subjects/2", "missing:value/name", "", "name" };
+        Object[] values = trie(xpaths).evaluate(this.doc);
+        Assert.assertEquals(xpaths.length, values.length);
+        for (int i = 0; i < xpaths.length; i++) {
+            Assert.assertEquals(xpaths[i], DocumentPath.evaluate(this.doc, xpaths[i]), values[i]);
+        }
+    }
+
+    @Test
+    public void testExtraction() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Object> json = new HashMap<>();
+        json.put("entity-type", "document");
+        json.put("uid", "1234");
+        json.put("properties", this.doc.getProperties());
+        byte[] bytes = mapper.writeValueAsBytes(json);
+
+        String[] xpaths = { "file:content/name", "file:content", "properties/dc:title", "dc:subjects/2",
+                "dc:subjects/-1", "missing:value" };
+        PathTrie trie = trie(xpaths);
+        Assert.assertTrue(trie.isStreamable());
+        PathTrie.Extraction extraction = trie.extract(new ByteArrayInputStream(bytes), mapper);
+        Assert.assertEquals("1234", extraction.getDocumentId());
+        Object[] expected = trie.evaluate(this.doc);
+        Assert.assertArrayEquals(expected, extraction.getValues());
+    }
+
+    @Test
+    public void testExtractionStopsEarly() throws IOException {
+        String json = "{\"uid\":\"1234\",\"properties\":{\"dc:title\":\"Test\",\"dc:description\": @@@";
+        PathTrie.Extraction extraction = trie("dc:title").extract(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), new ObjectMapper());
+        Assert.assertEquals("Test", extraction.getValues()[0]);
+    }
+
+    @Test
+    public void testExtractionUidAfterProperties() throws IOException {
+        String json = "{\"properties\":{\"dc:title\":\"Test\",\"uid\":\"wrong\",\"dc:subjects\":[\"art\"]},"
+                + "\"uid\":\"1234\"}";
+        PathTrie.Extraction extraction = trie("dc:title").extract(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), new ObjectMapper());
+        Assert.assertEquals("Test", extraction.getValues()[0]);
+        Assert.assertEquals("1234", extraction.getDocumentId());
+    }
+
+    @Test
+    public void testNotStreamable() {
+        Assert.assertFalse(trie("name").isStreamable());
+        Assert.assertFalse(trie("files:files/[length>1000]").isStreamable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPath() {
+        trie("dc:title/dc:description").evaluate(this.doc);
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.nuxeo.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertyFlattenerTest {
+
+    private Map<String, Object> properties;
+
+    @Before
+    public void createProperties() {
+        this.properties = new LinkedHashMap<>();
+        this.properties.put("dc:title", "Test");
+        this.properties.put("dc:subjects", Arrays.asList("art", "music"));
+        this.properties.put("dc:description", null);
+
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("name", "test.txt");
+        content.put("length", 42);
+        this.properties.put("file:content", content);
+    }
+
+    @Test
+    public void testFlatten() {
+        Map<String, String> attrs = new PropertyFlattener(true, null, null, Integer.MAX_VALUE,
+                Long.MAX_VALUE).flatten(this.properties);
+        Assert.assertEquals("Test", attrs.get("dc:title"));
+        Assert.assertEquals("art", attrs.get("dc:subjects.0"));
+        Assert.assertEquals("music", attrs.get("dc:subjects.1"));
+        Assert.assertEquals("test.txt", attrs.get("file:content.name"));
+        Assert.assertEquals("42", attrs.get("file:content.length"));
+        Assert.assertFalse(attrs.containsKey("dc:description"));
+        Assert.assertEquals(5, attrs.size());
+    }
+
+    @Test
+    public void testWhole() {
+        Map<String, String> attrs = new PropertyFlattener(false, null, null, Integer.MAX_VALUE,
+                Long.MAX_VALUE).flatten(this.properties);
+        Assert.assertEquals("[art, music]", attrs.get("dc:subjects"));
+        Assert.assertEquals(3, attrs.size());
+    }
+
+    @Test
+    public void testGlobs() {
+        Map<String, String> attrs = new PropertyFlattener(true, Arrays.asList("dc:*", "file:content"),
+                Arrays.asList("dc:subjects", "*.length"), Integer.MAX_VALUE, Long.MAX_VALUE).flatten(this.properties);
+        Assert.assertEquals(2, attrs.size());
+        Assert.assertEquals("Test", attrs.get("dc:title"));
+        Assert.assertEquals("test.txt", attrs.get("file:content.name"));
+    }
+
+    @Test
+    public void testLimits() {
+        Map<String, String> attrs = new PropertyFlattener(true, null, null, 2, Long.MAX_VALUE).flatten(
+                this.properties);
+        Assert.assertEquals("Te", attrs.get("dc:title"));
+
+        // dc:title + Test = 12 bytes, dc:subjects.0 + art = 16 bytes
+        attrs = new PropertyFlattener(true, null, null, Integer.MAX_VALUE, 30).flatten(this.properties);
+        Assert.assertEquals(Arrays.asList("dc:title", "dc:subjects.0"), new ArrayList<>(attrs.keySet()));
+
+        attrs = new PropertyFlattener(true, null, null, Integer.MAX_VALUE, 0).flatten(this.properties);
+        Assert.assertEquals(Collections.emptyMap(), attrs);
+    }
+
+    @Test
+    public void testTruncate() {
+        Assert.assertEquals("abc", PropertyFlattener.truncate("abc", 3));
+        Assert.assertEquals("ab", PropertyFlattener.truncate("abc", 2));
+        // é is 2 bytes, never split
+        Assert.assertEquals("a", PropertyFlattener.truncate("aé", 2));
+        Assert.assertEquals("aé", PropertyFlattener.truncate("aé", 3));
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.util.MockProcessSession;
+import org.apache.nifi.util.SharedSessionState;
+import org.nuxeo.client.util.PropertyFlattener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare per attribute <code>putAttribute</code> calls with a single <code>putAllAttributes</code> over the NiFi
+ * mock session, on the path of {@link NuxeoDocumentToAttributes} mapping all the document properties: the
+ * properties go through the {@link PropertyFlattener} of the processor, then the entity type and document ID are
+ * added.
+ * <p>
+ * Only the session calls differ between the two modes. The mock session doesn't journal the attribute changes like
+ * the framework session does, so this compares the API styles rather than predicting the gain in a flow.
+ * <p>
+ * Run with <code>main</code> from the test classpath, the GC profiler reports the allocation rate of each mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeWritesBenchmark {
+
+    private static final String DOC_ID = "0a1b2c3d-4e5f-6a7b-8c9d-0e1f2a3b4c5d";
+
+    @Param({ "2", "10", "100" })
+    public int count;
+
+    private MockProcessSession session;
+
+    private PropertyFlattener flattener;
+
+    private Map<String, Object> properties;
+
+    @Setup
+    public void setup() {
+        NuxeoDocumentToAttributes processor = new NuxeoDocumentToAttributes();
+        this.session = new MockProcessSession(new SharedSessionState(processor, new AtomicLong()), processor);
+        // The processor defaults: no filtering, no size limits
+        this.flattener = new PropertyFlattener(false, Collections.emptyList(), Collections.emptyList(),
+                Integer.MAX_VALUE, Long.MAX_VALUE);
+        this.properties = new HashMap<>();
+        for (int i = 0; i < this.count; i++) {
+            this.properties.put("dc:property" + i, "value " + i);
+        }
+    }
+
+    @Benchmark
+    public FlowFile putAttribute() {
+        FlowFile flowFile = this.session.create();
+        for (Map.Entry<String, String> attr : this.flattener.flatten(this.properties).entrySet()) {
+            flowFile = this.session.putAttribute(flowFile, attr.getKey(), attr.getValue());
+        }
+        flowFile = this.session.putAttribute(flowFile, NuxeoAttributes.VAR_ENTITY_TYPE, "document");
+        flowFile = this.session.putAttribute(flowFile, NuxeoAttributes.VAR_DOC_ID, DOC_ID);
+        this.session.rollback();
+        return flowFile;
+    }
+
+    @Benchmark
+    public FlowFile putAllAttributes() {
+        FlowFile flowFile = this.session.create();
+        Map<String, String> attrs = new HashMap<>();
+        attrs.putAll(this.flattener.flatten(this.properties));
+        attrs.put(NuxeoAttributes.VAR_ENTITY_TYPE, "document");
+        attrs.put(NuxeoAttributes.VAR_DOC_ID, DOC_ID);
+        flowFile = this.session.putAllAttributes(flowFile, attrs);
+        this.session.rollback();
+        return flowFile;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AttributeWritesBenchmark.class.getSimpleName())
+                                       .addProfiler("gc")
+                                       .build()).run();
+    }
+
+}
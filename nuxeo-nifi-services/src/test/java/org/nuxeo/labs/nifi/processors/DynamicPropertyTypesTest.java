@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.nuxeo.labs.nifi.processors;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class DynamicPropertyTypesTest {
+
+    private final CreateNuxeoDocument processor = new CreateNuxeoDocument();
+
+    private Object convert(String type, String value) {
+        return this.processor.convertValue(type, value);
+    }
+
+    @Test
+    public void testAutoParsesJSON() {
+        Assert.assertEquals(42, ((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, "42")).intValue());
+        Assert.assertTrue(((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, " true ")).booleanValue());
+        Assert.assertTrue(((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, "[\"a\"]")).isArray());
+        Assert.assertEquals("text",
+                ((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, "\"text\"")).textValue());
+        Assert.assertTrue(((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, "null")).isNull());
+    }
+
+    @Test
+    public void testAutoKeepsStrings() {
+        // A leading JSON value followed by text isn't truncated to that value
+        for (String value : new String[] { "true story", "{\"a\":1} copy", "2020-05-17", "12abc", "007", "{broken}",
+                "My Document" }) {
+            Assert.assertEquals(value, convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, value));
+        }
+        Assert.assertNull(convert(AbstractNuxeoDynamicProcessor.TYPE_AUTO, null));
+    }
+
+    @Test
+    public void testString() {
+        Assert.assertEquals("42", convert(AbstractNuxeoDynamicProcessor.TYPE_STRING, "42"));
+        Assert.assertEquals("{\"a\":1}", convert(AbstractNuxeoDynamicProcessor.TYPE_STRING, "{\"a\":1}"));
+    }
+
+    @Test
+    public void testJSON() {
+        Assert.assertTrue(((JsonNode) convert(AbstractNuxeoDynamicProcessor.TYPE_JSON, "{\"a\":1}")).isObject());
+        Assert.assertEquals("{broken", convert(AbstractNuxeoDynamicProcessor.TYPE_JSON, "{broken"));
+    }
+
+    @Test
+    public void testParseTypes() {
+        Map<String, String> types = AbstractNuxeoDynamicProcessor.parsePropertyTypes(
+                " dc:title = string,dc:nature=json ");
+        Assert.assertEquals(AbstractNuxeoDynamicProcessor.TYPE_STRING, types.get("dc:title"));
+        Assert.assertEquals(AbstractNuxeoDynamicProcessor.TYPE_JSON, types.get("dc:nature"));
+        Assert.assertTrue(AbstractNuxeoDynamicProcessor.parsePropertyTypes("").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownType() {
+        AbstractNuxeoDynamicProcessor.parsePropertyTypes("dc:title=date");
+    }
+
+}
@@ -0,0 +1,67 @@
+package org.nuxeo.labs.nifi.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private TokenBucket bucket(long rate) {
+        return new TokenBucket(rate, rate, this.now::get);
+    }
+
+    private void advanceMillis(long millis) {
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testBurstIsImmediate() {
+        TokenBucket bucket = bucket(1_000_000);
+        Assert.assertEquals(0, bucket.tryAcquire(1_000_000));
+    }
+
+    @Test
+    public void testAcquireWaitsForRefill() {
+        TokenBucket bucket = bucket(10_000);
+        Assert.assertEquals(0, bucket.tryAcquire(10_000));
+        // 2000 bytes at 10000 bytes/s
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.tryAcquire(2_000));
+        advanceMillis(100);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(2_000));
+        advanceMillis(100);
+        Assert.assertEquals(0, bucket.tryAcquire(2_000));
+    }
+
+    @Test
+    public void testRefillIsCapped() {
+        TokenBucket bucket = bucket(10_000);
+        advanceMillis(10_000);
+        Assert.assertEquals(0, bucket.tryAcquire(10_000));
+        Assert.assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test
+    public void testConsumeDelaysBulk() {
+        TokenBucket bucket = bucket(10_000);
+        bucket.consume(12_000);
+        // 2000 bytes of debt plus 1 byte
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(200_100), bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testAcquire() throws InterruptedException {
+        TokenBucket bucket = bucket(10_000);
+        bucket.acquire(10_000);
+        Assert.assertTrue(bucket.tryAcquire(1) > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0);
+    }
+
+}